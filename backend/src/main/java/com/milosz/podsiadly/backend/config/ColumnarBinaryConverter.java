@@ -0,0 +1,80 @@
+package com.milosz.podsiadly.backend.config;
+
+import com.milosz.podsiadly.backend.dto.ColumnarSeriesDto;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link ColumnarSeriesDto} as {@value ColumnarSeriesDto#BINARY_VALUE}, big-endian:
+ * <pre>
+ * "WVC1"  int64 start (epoch s)  int64 step (s, 0 = offsets follow)  int32 length
+ * [int32 offsets[length]]
+ * uint16 columns, then per column: uint16 name length, UTF-8 name,
+ *   uint8 0 (no values) | 1 followed by float32[length], NaN = missing
+ * </pre>
+ * Location, interval and averages stay in the JSON form only.
+ */
+@Component
+public class ColumnarBinaryConverter extends AbstractHttpMessageConverter<ColumnarSeriesDto> {
+
+    private static final byte[] MAGIC = "WVC1".getBytes(StandardCharsets.US_ASCII);
+
+    public ColumnarBinaryConverter() {
+        super(MediaType.parseMediaType(ColumnarSeriesDto.BINARY_VALUE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ColumnarSeriesDto.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ColumnarSeriesDto readInternal(Class<? extends ColumnarSeriesDto> clazz, HttpInputMessage in) {
+        throw new HttpMessageNotReadableException("Columnar binary is write-only", in);
+    }
+
+    @Override
+    protected void writeInternal(ColumnarSeriesDto s, HttpOutputMessage out) throws IOException {
+        write(s, new DataOutputStream(new BufferedOutputStream(out.getBody(), 8192)));
+    }
+
+    public static void write(ColumnarSeriesDto s, DataOutputStream d) throws IOException {
+        int n = s.length();
+        d.write(MAGIC);
+        d.writeLong(s.start());
+        d.writeLong(s.offsets() == null ? s.step() : 0);
+        d.writeInt(n);
+        if (s.offsets() != null) {
+            for (long o : s.offsets()) d.writeInt((int) o);
+        }
+        d.writeShort(s.names().length);
+        for (int v = 0; v < s.names().length; v++) {
+            byte[] name = s.names()[v].getBytes(StandardCharsets.UTF_8);
+            d.writeShort(name.length);
+            d.write(name);
+
+            double[] col = s.columns()[v];
+            boolean any = false;
+            for (int i = 0; i < n && !any; i++) any = !Double.isNaN(col[i]);
+            d.writeByte(any ? 1 : 0);
+            if (any) {
+                for (int i = 0; i < n; i++) d.writeFloat((float) col[i]);
+            }
+        }
+        d.flush();
+    }
+}
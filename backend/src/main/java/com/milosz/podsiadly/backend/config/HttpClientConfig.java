@@ -1,14 +1,89 @@
 package com.milosz.podsiadly.backend.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Client used for every upstream call (through {@code UpstreamGateway}). The JDK client keeps a
+ * pool of keep-alive connections per host and uses HTTP/2 where the server offers it; bodies are
+ * requested gzip-compressed and inflated here, and connect and read timeouts are separate.
+ */
 @Configuration
 public class HttpClientConfig {
 
     @Bean
-    public RestClient restClient(RestClient.Builder builder) {
-        return builder.build();
+    public RestClient restClient(RestClient.Builder builder,
+                                 @Value("${app.upstream.http.connect-timeout:PT3S}") Duration connectTimeout,
+                                 @Value("${app.upstream.http.read-timeout:PT20S}") Duration readTimeout) {
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(client);
+        factory.setReadTimeout(readTimeout);
+        return builder.requestFactory(factory).requestInterceptor(HttpClientConfig::gzip).build();
+    }
+
+    private static ClientHttpResponse gzip(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ClientHttpResponse response = execution.execute(request, body);
+        String encoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        return "gzip".equalsIgnoreCase(encoding) ? new Inflated(response) : response;
+    }
+
+    /** The response with its body inflated and the encoding headers dropped. */
+    private static final class Inflated implements ClientHttpResponse {
+
+        private final ClientHttpResponse raw;
+        private final HttpHeaders headers = new HttpHeaders();
+        private InputStream body;
+
+        Inflated(ClientHttpResponse raw) {
+            this.raw = raw;
+            headers.putAll(raw.getHeaders());
+            headers.remove(HttpHeaders.CONTENT_ENCODING);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return raw.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return raw.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) body = new GZIPInputStream(raw.getBody());
+            return body;
+        }
+
+        @Override
+        public void close() {
+            raw.close();
+        }
     }
 }
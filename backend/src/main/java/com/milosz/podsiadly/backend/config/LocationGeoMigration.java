@@ -0,0 +1,44 @@
+package com.milosz.podsiadly.backend.config;
+
+import org.bson.Document;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Gives stored locations a GeoJSON {@code position} from their coordinates and creates the
+ * {@code 2dsphere} index the nearest-location lookup needs. Idempotent; only documents without a
+ * position are touched. Existing locations keep their own measurements: only locations stored
+ * from now on are put into a grid cell.
+ */
+@Component
+@ConditionalOnProperty(name = "app.migrations.enabled", havingValue = "true", matchIfMissing = true)
+public class LocationGeoMigration implements ApplicationRunner {
+
+    private static final String COLLECTION = "locations";
+
+    private final MongoTemplate mongo;
+
+    public LocationGeoMigration(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Document missing = new Document("position", new Document("$exists", false))
+                .append("latitude", new Document("$type", "number"))
+                .append("longitude", new Document("$type", "number"));
+        Document point = new Document("type", "Point").append("coordinates", List.of("$longitude", "$latitude"));
+        mongo.getCollection(COLLECTION).updateMany(missing, List.of(new Document("$set", new Document("position", point))));
+
+        mongo.indexOps(COLLECTION).createIndex(new GeospatialIndex("position")
+                .typed(GeoSpatialIndexType.GEO_2DSPHERE)
+                .named("ix_location_position"));
+    }
+}
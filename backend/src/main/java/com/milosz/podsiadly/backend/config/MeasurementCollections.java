@@ -0,0 +1,92 @@
+package com.milosz.podsiadly.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Which collections hold measurements, driven by {@code app.storage.measurements}:
+ * <ul>
+ *   <li>{@code legacy} – one document per location-hour in the regular collections;</li>
+ *   <li>{@code dual} – reads stay on the regular collections, writes go to both, and the
+ *       time-series copies are backfilled in the background;</li>
+ *   <li>{@code time-series} – reads and writes use only the time-series collections.</li>
+ * </ul>
+ * The entities resolve their collection through this bean, so repositories and
+ * {@code MongoTemplate} queries follow the switch.
+ * <p>
+ * Time-series collections cannot have a unique index. {@code MeasurementStore} replaces hours
+ * under an in-process lock per location, which keeps one copy per hour only while a single
+ * backend instance writes; reads of the time-series collections therefore keep one row per hour
+ * themselves, so a second writer costs a redundant document, not a double-counted hour.
+ */
+@Component("measurementCollections")
+public class MeasurementCollections {
+
+    public enum Mode { LEGACY, DUAL, TIME_SERIES }
+
+    public static final String WEATHER = "weather_measurements";
+    public static final String WEATHER_TS = "weather_measurements_ts";
+    public static final String AIR_QUALITY = "air_quality_measurement";
+    public static final String AIR_QUALITY_TS = "air_quality_measurement_ts";
+
+    /** Per-location count/sum/min/max rollups, one row per UTC day or month; regular collections in every mode. */
+    public static final String WEATHER_DAILY = "weather_rollup_daily";
+    public static final String WEATHER_MONTHLY = "weather_rollup_monthly";
+    public static final String AIR_QUALITY_DAILY = "air_quality_rollup_daily";
+    public static final String AIR_QUALITY_MONTHLY = "air_quality_rollup_monthly";
+
+    /** Per-location write counters of each measurement family, used as HTTP validators. */
+    public static final String VERSIONS = "measurement_versions";
+
+    /** Progress and completion markers of the background migrations. */
+    public static final String MIGRATIONS = "migrations";
+
+    private final Mode mode;
+
+    public MeasurementCollections(@Value("${app.storage.measurements:legacy}") String mode) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public String weather() {
+        return mode == Mode.TIME_SERIES ? WEATHER_TS : WEATHER;
+    }
+
+    public String airQuality() {
+        return mode == Mode.TIME_SERIES ? AIR_QUALITY_TS : AIR_QUALITY;
+    }
+
+    /**
+     * Whether reads go to the time-series collections, where the same hour can be stored twice
+     * (no unique index) and aggregations have to keep one row per hour themselves.
+     */
+    public boolean readsTimeSeries() {
+        return mode == Mode.TIME_SERIES;
+    }
+
+    public List<String> weatherWrites() {
+        return writes(WEATHER, WEATHER_TS);
+    }
+
+    public List<String> airQualityWrites() {
+        return writes(AIR_QUALITY, AIR_QUALITY_TS);
+    }
+
+    public static boolean isTimeSeries(String collection) {
+        return collection.endsWith("_ts");
+    }
+
+    private List<String> writes(String legacy, String timeSeries) {
+        return switch (mode) {
+            case LEGACY -> List.of(legacy);
+            case DUAL -> List.of(legacy, timeSeries);
+            case TIME_SERIES -> List.of(timeSeries);
+        };
+    }
+}
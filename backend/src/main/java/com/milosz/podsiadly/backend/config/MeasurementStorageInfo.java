@@ -0,0 +1,104 @@
+package com.milosz.podsiadly.backend.config;
+
+import org.bson.Document;
+import org.springframework.boot.actuate.info.Info;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/info} section comparing the regular and time-series measurement
+ * collections (data, storage and index bytes from {@code $collStats}), plus backfill progress.
+ * <p>
+ * Each pair also gets the same range scan timed on both sides: the {@link #SCAN_WINDOW} of hourly
+ * rows before the newest row of the read collection, for that row's location. Only collections
+ * that exist are measured, so the scan is a comparison only in {@code dual} mode once backfilled.
+ */
+@Component
+public class MeasurementStorageInfo implements InfoContributor {
+
+    static final Duration SCAN_WINDOW = Duration.ofDays(30);
+
+    private static final List<List<String>> PAIRS = List.of(
+            List.of(MeasurementCollections.WEATHER, MeasurementCollections.WEATHER_TS),
+            List.of(MeasurementCollections.AIR_QUALITY, MeasurementCollections.AIR_QUALITY_TS));
+
+    private final MongoTemplate mongo;
+    private final MeasurementCollections collections;
+
+    public MeasurementStorageInfo(MongoTemplate mongo, MeasurementCollections collections) {
+        this.mongo = mongo;
+        this.collections = collections;
+    }
+
+    @Override
+    public void contribute(Info.Builder builder) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("mode", collections.mode().name().toLowerCase().replace('_', '-'));
+        for (List<String> pair : PAIRS) {
+            List<String> present = pair.stream().filter(mongo::collectionExists).toList();
+            if (present.isEmpty()) continue;
+            Map<String, Map<String, Object>> byCollection = new LinkedHashMap<>();
+            for (String c : present) byCollection.put(c, stats(c));
+
+            Document newest = newestRow(collections.readsTimeSeries() ? pair.get(1) : pair.get(0), present);
+            if (newest != null) {
+                Criteria range = Criteria.where("locationId").is(newest.get("locationId")).and("recordedAt")
+                        .gt(Date.from(newest.getDate("recordedAt").toInstant().minus(SCAN_WINDOW)))
+                        .lte(newest.getDate("recordedAt"));
+                byCollection.forEach((c, stats) -> stats.put("rangeScan", rangeScan(c, range)));
+            }
+            out.putAll(byCollection);
+        }
+        List<Document> backfill = mongo.findAll(Document.class, MeasurementCollections.MIGRATIONS);
+        if (!backfill.isEmpty()) out.put("backfill", backfill);
+        builder.withDetail("measurementStorage", out);
+    }
+
+    private Map<String, Object> stats(String collection) {
+        Document first = mongo.getCollection(collection)
+                .aggregate(List.of(new Document("$collStats", new Document("storageStats", new Document()))))
+                .first();
+        Document s = first == null ? new Document() : first.get("storageStats", new Document());
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("documents", s.get("count"));
+        out.put("dataBytes", s.get("size"));
+        out.put("storageBytes", s.get("storageSize"));
+        out.put("indexBytes", s.get("totalIndexSize"));
+        Document ts = s.get("timeseries", Document.class);
+        if (ts != null) out.put("buckets", ts.get("bucketCount"));
+        return out;
+    }
+
+    /** Newest row of {@code preferred}, or of the other collection present when that one is missing. */
+    private Document newestRow(String preferred, List<String> present) {
+        String c = present.contains(preferred) ? preferred : present.get(0);
+        Query q = new Query().with(Sort.by(Sort.Direction.DESC, "recordedAt")).limit(1);
+        q.fields().include("locationId").include("recordedAt");
+        return mongo.findOne(q, Document.class, c);
+    }
+
+    private Map<String, Object> rangeScan(String collection, Criteria range) {
+        Query q = new Query(range);
+        q.fields().include("recordedAt");
+        long started = System.nanoTime();
+        int rows = mongo.find(q, Document.class, collection).size();
+        long micros = (System.nanoTime() - started) / 1000;
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("window", SCAN_WINDOW.toString());
+        out.put("rows", rows);
+        out.put("micros", micros);
+        return out;
+    }
+}
@@ -0,0 +1,57 @@
+package com.milosz.podsiadly.backend.config;
+
+import com.milosz.podsiadly.backend.service.MeasurementRollups;
+import org.bson.Document;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Indexes the rollup collections and, once, builds them from every stored row on a background thread.
+ * History reads keep using raw rows until the marker is written; writes made meanwhile already
+ * refresh the days they touch.
+ */
+@Component
+@ConditionalOnProperty(name = "app.migrations.enabled", havingValue = "true", matchIfMissing = true)
+public class RollupMigration implements ApplicationRunner {
+
+    private final MongoTemplate mongo;
+    private final MeasurementRollups rollups;
+
+    public RollupMigration(MongoTemplate mongo, MeasurementRollups rollups) {
+        this.mongo = mongo;
+        this.rollups = rollups;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        for (String c : List.of(MeasurementCollections.WEATHER_DAILY, MeasurementCollections.WEATHER_MONTHLY,
+                MeasurementCollections.AIR_QUALITY_DAILY, MeasurementCollections.AIR_QUALITY_MONTHLY)) {
+            mongo.indexOps(c).createIndex(new Index()
+                    .on("locationId", Sort.Direction.ASC)
+                    .on("start", Sort.Direction.ASC)
+                    .named("ix_loc_start"));
+        }
+        if (rollups.isReady()) return;
+
+        Thread t = new Thread(() -> {
+            rollups.rebuild(MeasurementRollups.Family.WEATHER);
+            rollups.rebuild(MeasurementRollups.Family.AIR_QUALITY);
+            mongo.upsert(Query.query(Criteria.where("_id").is(MeasurementRollups.READY_MARKER)),
+                    new Update().set("done", true).set("finishedAt", new Date()), MeasurementCollections.MIGRATIONS);
+            rollups.markReady();
+        }, "rollup-backfill");
+        t.setDaemon(true);
+        t.start();
+    }
+}
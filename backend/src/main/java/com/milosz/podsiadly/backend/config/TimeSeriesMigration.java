@@ -0,0 +1,111 @@
+package com.milosz.podsiadly.backend.config;
+
+import com.milosz.podsiadly.backend.service.MeasurementStore;
+import org.bson.Document;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Online move to time-series storage. Creates the {@code *_ts} collections
+ * ({@code recordedAt} time field, {@code locationId} meta field, hourly buckets) and, in
+ * {@code dual} mode, copies the regular collections over on a background thread while the
+ * app keeps serving and dual-writing. Progress is checkpointed in {@code migrations}, so a
+ * restart resumes where it stopped; once both copies are marked done, switch
+ * {@code app.storage.measurements} to {@code time-series}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.migrations.enabled", havingValue = "true", matchIfMissing = true)
+public class TimeSeriesMigration implements ApplicationRunner {
+
+    private static final int BATCH = 1000;
+
+    private final MongoTemplate mongo;
+    private final MeasurementStore store;
+    private final MeasurementCollections collections;
+
+    public TimeSeriesMigration(MongoTemplate mongo, MeasurementStore store, MeasurementCollections collections) {
+        this.mongo = mongo;
+        this.store = store;
+        this.collections = collections;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (collections.mode() == MeasurementCollections.Mode.LEGACY) return;
+
+        createTimeSeries(MeasurementCollections.WEATHER_TS);
+        createTimeSeries(MeasurementCollections.AIR_QUALITY_TS);
+
+        if (collections.mode() == MeasurementCollections.Mode.DUAL) {
+            Thread t = new Thread(() -> {
+                backfill(MeasurementCollections.WEATHER, MeasurementCollections.WEATHER_TS);
+                backfill(MeasurementCollections.AIR_QUALITY, MeasurementCollections.AIR_QUALITY_TS);
+            }, "timeseries-backfill");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private void createTimeSeries(String name) {
+        if (!mongo.collectionExists(name)) {
+            mongo.createCollection(name, CollectionOptions.timeSeries("recordedAt",
+                    o -> o.metaField("locationId").granularity(Granularity.HOURS)));
+        }
+        // MongoDB 6.3+ adds the compound {locationId, recordedAt} index on its own, which is
+        // what the per-location range scans use.
+    }
+
+    /** Copies {@code source} into {@code target} in (locationId, recordedAt) order, resumable. */
+    void backfill(String source, String target) {
+        String markerId = "backfill:" + target;
+        Document marker = mongo.findById(markerId, Document.class, MeasurementCollections.MIGRATIONS);
+        if (marker != null && marker.getBoolean("done", false)) return;
+
+        Query q = new Query().with(Sort.by("locationId", "recordedAt"));
+        if (marker != null && marker.get("locationId") != null) {
+            String loc = marker.getString("locationId");
+            Date at = marker.getDate("recordedAt");
+            q.addCriteria(new Criteria().orOperator(
+                    Criteria.where("locationId").gt(loc),
+                    Criteria.where("locationId").is(loc).and("recordedAt").gt(at)));
+        }
+        q.fields().exclude("_id").exclude("_class");
+
+        List<Document> batch = new ArrayList<>(BATCH);
+        try (var rows = mongo.stream(q, Document.class, source)) {
+            rows.forEach(d -> {
+                batch.add(d);
+                if (batch.size() >= BATCH) flush(target, markerId, batch);
+            });
+        }
+        flush(target, markerId, batch);
+        mongo.upsert(Query.query(Criteria.where("_id").is(markerId)),
+                new Update().set("done", true).set("finishedAt", new Date()), MeasurementCollections.MIGRATIONS);
+    }
+
+    private void flush(String target, String markerId, List<Document> batch) {
+        if (batch.isEmpty()) return;
+        store.replaceAll(target, new ArrayList<>(batch));
+        Document last = batch.get(batch.size() - 1);
+        mongo.upsert(Query.query(Criteria.where("_id").is(markerId)),
+                new Update()
+                        .set("locationId", last.get("locationId"))
+                        .set("recordedAt", last.get("recordedAt"))
+                        .inc("copied", batch.size()),
+                MeasurementCollections.MIGRATIONS);
+        batch.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package com.milosz.podsiadly.backend.config;
+
+import org.bson.Document;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * One-off: drops duplicate {@code (locationId, recordedAt)} rows left by the old
+ * insert-per-request path, then creates the unique index. Skipped once the index exists.
+ * Always targets the regular collections; the time-series copies cannot carry a unique index,
+ * which is why the entities do not declare one.
+ */
+@Component
+@ConditionalOnProperty(name = "app.migrations.enabled", havingValue = "true", matchIfMissing = true)
+public class WeatherMeasurementMigration implements ApplicationRunner {
+
+    private static final Map<String, String> UNIQUE_INDEXES = Map.of(
+            MeasurementCollections.WEATHER, "uk_wm_loc_time",
+            MeasurementCollections.AIR_QUALITY, "uk_aq_loc_time");
+    private static final int DELETE_BATCH = 1000;
+
+    private final MongoTemplate mongo;
+
+    public WeatherMeasurementMigration(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        UNIQUE_INDEXES.forEach(this::migrate);
+    }
+
+    private void migrate(String collection, String indexName) {
+        IndexOperations ops = mongo.indexOps(collection);
+        boolean present = ops.getIndexInfo().stream().anyMatch(i -> indexName.equals(i.getName()));
+        if (present) return;
+
+        removeDuplicates(collection);
+        ops.createIndex(new Index()
+                .on("locationId", Sort.Direction.ASC)
+                .on("recordedAt", Sort.Direction.ASC)
+                .unique()
+                .named(indexName));
+    }
+
+    /**
+     * Keeps the newest row of each duplicated key. The grouping holds one {@code _id} and a count per
+     * key and may spill to disk; only keys seen more than once come back, and their extra rows are
+     * deleted by key in batches.
+     */
+    private void removeDuplicates(String collection) {
+        Aggregation agg = newAggregation(
+                sort(Sort.Direction.DESC, "_id"),
+                group("locationId", "recordedAt").first("_id").as("keep").count().as("n"),
+                match(Criteria.where("n").gt(1))
+        ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        List<Criteria> doomed = new ArrayList<>(DELETE_BATCH);
+        try (var groups = mongo.aggregateStream(agg, collection, Document.class)) {
+            groups.forEach(g -> {
+                Document key = g.get("_id", Document.class);
+                doomed.add(Criteria.where("locationId").is(key.get("locationId"))
+                        .and("recordedAt").is(key.get("recordedAt"))
+                        .and("_id").ne(g.get("keep")));
+                if (doomed.size() >= DELETE_BATCH) flush(collection, doomed);
+            });
+        }
+        flush(collection, doomed);
+    }
+
+    private void flush(String collection, List<Criteria> keys) {
+        if (keys.isEmpty()) return;
+        mongo.remove(new Query(new Criteria().orOperator(keys)), collection);
+        keys.clear();
+    }
+}
@@ -1,8 +1,19 @@
 package com.milosz.podsiadly.backend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.milosz.podsiadly.backend.dto.AirQualityPointDto;
 import com.milosz.podsiadly.backend.dto.AirQualitySeriesDto;
+import com.milosz.podsiadly.backend.dto.ColumnarSeriesDto;
+import com.milosz.podsiadly.backend.series.HourlySeries;
 import com.milosz.podsiadly.backend.service.AirQualityService;
+import com.milosz.podsiadly.backend.service.LocationService;
+import com.milosz.podsiadly.backend.service.MeasurementRollups;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -12,9 +23,16 @@ import java.time.Instant;
 public class AirQualityController {
 
     private final AirQualityService service;
+    private final LocationService locations;
+    private final ObjectMapper json;
+    private final HistoryCaching caching;
 
-    public AirQualityController(AirQualityService service) {
+    public AirQualityController(AirQualityService service, LocationService locations, ObjectMapper json,
+                                HistoryCaching caching) {
         this.service = service;
+        this.locations = locations;
+        this.json = json;
+        this.caching = caching;
     }
 
     @PostMapping("/live/{locationId}/last24h")
@@ -25,11 +43,56 @@ public class AirQualityController {
     }
 
     @GetMapping("/history/{locationId}/last24h")
-    public AirQualitySeriesDto historyLast24h(@PathVariable String locationId) {
+    public ResponseEntity<AirQualitySeriesDto> historyLast24h(@PathVariable String locationId,
+                                                              @RequestParam(required = false) String interval,
+                                                              ServletWebRequest request) {
         Instant to   = Instant.now();
         Instant from = to.minus(Duration.ofHours(24));
-        var points   = service.history(locationId, from, to);
-        var averages = service.computeAverages(points);
-        return new AirQualitySeriesDto(averages, points);
+        String key = locations.dataKey(locationId);
+        return caching.respond(request, etag(key, "json", from, to, interval), true, false, null, () -> {
+            var points   = service.history(key, from, to, interval);
+            var averages = service.computeAverages(points);
+            return new AirQualitySeriesDto(averages, points, false);
+        });
+    }
+
+    /** {@link #historyLast24h} as one array per variable, JSON or float32 binary depending on Accept. */
+    @GetMapping(value = "/history/{locationId}/last24h",
+            produces = { ColumnarSeriesDto.JSON_VALUE, ColumnarSeriesDto.BINARY_VALUE })
+    public ResponseEntity<ColumnarSeriesDto> historyLast24hColumnar(@PathVariable String locationId,
+                                                                    @RequestParam(required = false) String interval,
+                                                                    ServletWebRequest request) {
+        Instant to   = Instant.now();
+        Instant from = to.minus(Duration.ofHours(24));
+        String key = locations.dataKey(locationId);
+        String etag = etag(key, request.getHeader(HttpHeaders.ACCEPT), from, to, interval);
+        return caching.respond(request, etag, true, false, null,
+                () -> service.historyColumnar(key, from, to, interval));
+    }
+
+    /** Points of {@link #historyLast24h} as NDJSON, without the averages. */
+    @GetMapping(value = "/history/{locationId}/last24h", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> historyLast24hStream(@PathVariable String locationId,
+                                                                      @RequestParam(required = false) String interval,
+                                                                      ServletWebRequest request) {
+        Instant to   = Instant.now();
+        Instant from = to.minus(Duration.ofHours(24));
+        String key = locations.dataKey(locationId);
+        StreamingResponseBody body = out -> {
+            try (var writer = new NdjsonWriter<AirQualityPointDto>(json, out)) {
+                service.streamHistory(key, from, to, interval, writer);
+            }
+        };
+        return caching.respond(request, etag(key, "ndjson", from, to, interval), true, false,
+                MediaType.APPLICATION_NDJSON, () -> body);
+    }
+
+    /**
+     * The window moves with the clock but its rows only change on the hour, so the hours are the key.
+     * {@code key} is the location's data key; the bodies do not name the location, so nearby locations share it.
+     */
+    private String etag(String key, String variant, Instant from, Instant to, String interval) {
+        return caching.etag(MeasurementRollups.Family.AIR_QUALITY, key, false,
+                variant, HourlySeries.ceilHour(from), HourlySeries.epochHour(to), interval);
     }
 }
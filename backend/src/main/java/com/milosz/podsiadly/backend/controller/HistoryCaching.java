@@ -0,0 +1,78 @@
+package com.milosz.podsiadly.backend.controller;
+
+import com.milosz.podsiadly.backend.service.MeasurementRollups;
+import com.milosz.podsiadly.backend.service.MeasurementVersions;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Validators and freshness for the history endpoints. The ETag is the stored-data version of
+ * the location plus a digest of everything else the body depends on, so a matching
+ * {@code If-None-Match} is answered with 304 before any aggregation runs. Windows that will not
+ * change any more are {@code immutable} and leave the version out, so writes to newer hours do
+ * not change their ETag; the rest get a short {@code max-age}.
+ */
+@Component
+class HistoryCaching {
+
+    private final MeasurementVersions versions;
+    private final CacheControl settled;
+    private final CacheControl recent;
+
+    HistoryCaching(MeasurementVersions versions,
+                   @Value("${app.http.history.settled-max-age:P365D}") Duration settledMaxAge,
+                   @Value("${app.http.history.recent-max-age:PT1M}") Duration recentMaxAge) {
+        this.versions = versions;
+        this.settled = CacheControl.maxAge(settledMaxAge).cachePublic().immutable();
+        this.recent = CacheControl.maxAge(recentMaxAge).cachePublic();
+    }
+
+    /**
+     * Strong validator; {@code parts} are the representation and every parameter that shapes the body.
+     * A {@code settled} window's rows are all stored and never rewritten, so its body depends on the
+     * parameters alone.
+     */
+    String etag(MeasurementRollups.Family family, String locationId, boolean settled, Object... parts) {
+        StringBuilder key = new StringBuilder(locationId);
+        for (Object p : parts) key.append('|').append(p);
+        String version = settled ? "settled" : String.valueOf(versions.current(family, locationId));
+        return "\"" + family.name().toLowerCase() + "-" + version + "-"
+                + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * @param storedOnly the body is computed from stored rows alone, so an unchanged version means an
+     *                   unchanged body and a matching {@code If-None-Match} can skip it
+     * @param settled    no hour of the window can change any more
+     * @param type       content type to set, or null to leave it to content negotiation
+     */
+    <T> ResponseEntity<T> respond(ServletWebRequest request, String etag, boolean storedOnly, boolean settled,
+                                  MediaType type, Supplier<T> body) {
+        CacheControl cache = settled ? this.settled : recent;
+        if (storedOnly && request.checkNotModified(etag)) {
+            // 304s carry the freshness too, so caches can extend their copy.
+            HttpServletResponse res = request.getResponse();
+            if (res != null) {
+                res.setHeader(HttpHeaders.CACHE_CONTROL, cache.getHeaderValue());
+                res.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            }
+            return null;
+        }
+        var ok = ResponseEntity.ok().eTag(etag).cacheControl(cache).varyBy(HttpHeaders.ACCEPT);
+        if (type != null) ok.contentType(type);
+        // A stream buffered by the proxy would lose its first-byte latency and back-pressure.
+        if (MediaType.APPLICATION_NDJSON.equals(type)) ok.header("X-Accel-Buffering", "no");
+        return ok.body(body.get());
+    }
+}
@@ -1,7 +1,9 @@
 package com.milosz.podsiadly.backend.controller;
 
 import com.milosz.podsiadly.backend.dto.LocationDto;
+import com.milosz.podsiadly.backend.mapper.LocationMapper;
 import com.milosz.podsiadly.backend.service.LocationService;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -11,9 +13,11 @@ import java.util.List;
 public class LocationsController {
 
     private final LocationService service;
+    private final LocationMapper mapper;
 
-    public LocationsController(LocationService service) {
+    public LocationsController(LocationService service, LocationMapper mapper) {
         this.service = service;
+        this.mapper = mapper;
     }
 
     @GetMapping("/search")
@@ -22,4 +26,13 @@ public class LocationsController {
             @RequestParam(defaultValue = "5") int count) {
         return service.search(query, count);
     }
+
+    /** The stored location closest to the point, 404 when none lies within {@code maxDistance} metres. */
+    @GetMapping("/nearest")
+    public ResponseEntity<LocationDto> nearest(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(defaultValue = "25000") double maxDistance) {
+        return ResponseEntity.of(service.nearest(lat, lon, maxDistance).map(mapper::toDto));
+    }
 }
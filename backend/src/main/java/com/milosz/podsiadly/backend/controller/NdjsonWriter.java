@@ -0,0 +1,47 @@
+package com.milosz.podsiadly.backend.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.milosz.podsiadly.backend.service.PointSink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes one JSON document per line. The first row is flushed at once so clients see data
+ * immediately; after that every {@link #FLUSH_EVERY} rows. Writes block while the client is
+ * not reading, which in turn holds back the Mongo cursor feeding the sink.
+ */
+class NdjsonWriter<T> implements PointSink<T>, AutoCloseable {
+
+    private static final int FLUSH_EVERY = 256;
+
+    private final OutputStream out;
+    private final SequenceWriter writer;
+    private int rows;
+
+    NdjsonWriter(ObjectMapper json, OutputStream out) throws IOException {
+        this.out = out;
+        this.writer = json.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n")
+                .writeValues(out);
+    }
+
+    @Override
+    public void accept(T point) throws IOException {
+        writer.write(point);
+        if (rows++ % FLUSH_EVERY == 0) {
+            writer.flush();
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        if (rows > 0) out.write('\n');
+        out.flush();
+    }
+}
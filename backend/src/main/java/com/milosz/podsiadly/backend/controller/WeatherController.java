@@ -1,10 +1,19 @@
 package com.milosz.podsiadly.backend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.milosz.podsiadly.backend.dto.ColumnarSeriesDto;
 import com.milosz.podsiadly.backend.dto.WeatherCurrentDto;
 import com.milosz.podsiadly.backend.dto.WeatherHistoryResponseDto;
+import com.milosz.podsiadly.backend.dto.WeatherPointDto;
 import com.milosz.podsiadly.backend.service.LocationService;
+import com.milosz.podsiadly.backend.service.MeasurementRollups;
 import com.milosz.podsiadly.backend.service.WeatherService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.Instant;
 
@@ -14,10 +23,15 @@ public class WeatherController {
 
     private final WeatherService weatherService;
     private final LocationService locationService;
+    private final ObjectMapper json;
+    private final HistoryCaching caching;
 
-    public WeatherController(WeatherService weatherService, LocationService locationService) {
+    public WeatherController(WeatherService weatherService, LocationService locationService, ObjectMapper json,
+                             HistoryCaching caching) {
         this.weatherService = weatherService;
         this.locationService = locationService;
+        this.json = json;
+        this.caching = caching;
     }
 
     @GetMapping("/current")
@@ -27,12 +41,58 @@ public class WeatherController {
     }
 
     @GetMapping("/history")
-    public WeatherHistoryResponseDto history(
+    public ResponseEntity<WeatherHistoryResponseDto> history(
             @RequestParam String locationId,
             @RequestParam Instant from,
             @RequestParam Instant to,
-            @RequestParam(defaultValue = "1h") String interval) {
+            @RequestParam(defaultValue = "1h") String interval,
+            @RequestParam(required = false) String agg,
+            @RequestParam(required = false) Integer maxPoints,
+            ServletWebRequest request) {
         var loc = locationService.require(locationId);
-        return weatherService.history(loc, from, to, interval);
+        boolean archived = weatherService.isArchived(loc, from, to);
+        String etag = caching.etag(MeasurementRollups.Family.WEATHER, loc.dataKey(), archived, loc.getId(),
+                "json", from, to, interval, agg, maxPoints);
+        return caching.respond(request, etag, archived, archived, null,
+                () -> weatherService.history(loc, from, to, interval, agg, maxPoints));
+    }
+
+    /** {@link #history} as one array per variable, JSON or float32 binary depending on Accept. */
+    @GetMapping(value = "/history", produces = { ColumnarSeriesDto.JSON_VALUE, ColumnarSeriesDto.BINARY_VALUE })
+    public ResponseEntity<ColumnarSeriesDto> historyColumnar(
+            @RequestParam String locationId,
+            @RequestParam Instant from,
+            @RequestParam Instant to,
+            @RequestParam(defaultValue = "1h") String interval,
+            @RequestParam(required = false) String agg,
+            @RequestParam(required = false) Integer maxPoints,
+            ServletWebRequest request) {
+        var loc = locationService.require(locationId);
+        boolean archived = weatherService.isArchived(loc, from, to);
+        String etag = caching.etag(MeasurementRollups.Family.WEATHER, loc.dataKey(), archived, loc.getId(),
+                request.getHeader(HttpHeaders.ACCEPT), from, to, interval, agg, maxPoints);
+        return caching.respond(request, etag, archived, archived, null,
+                () -> weatherService.historyColumnar(loc, from, to, interval, agg, maxPoints));
+    }
+
+    /** Same points as {@link #history}, one JSON object per line, written while the cursor is read. */
+    @GetMapping(value = "/history", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> historyStream(
+            @RequestParam String locationId,
+            @RequestParam Instant from,
+            @RequestParam Instant to,
+            @RequestParam(defaultValue = "1h") String interval,
+            @RequestParam(required = false) String agg,
+            ServletWebRequest request) {
+        var loc = locationService.require(locationId);
+        boolean archived = weatherService.isArchived(loc, from, to);
+        String etag = caching.etag(MeasurementRollups.Family.WEATHER, loc.dataKey(), archived, loc.getId(),
+                "ndjson", from, to, interval, agg);
+        StreamingResponseBody body = out -> {
+            try (var writer = new NdjsonWriter<WeatherPointDto>(json, out)) {
+                weatherService.streamHistory(loc, from, to, interval, agg, writer);
+            }
+        };
+        return caching.respond(request, etag, archived, archived, MediaType.APPLICATION_NDJSON, () -> body);
     }
 }
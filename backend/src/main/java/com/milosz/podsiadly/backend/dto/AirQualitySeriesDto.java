@@ -2,7 +2,9 @@ package com.milosz.podsiadly.backend.dto;
 
 import java.util.List;
 
+/** {@code stale}: upstream could not be reached and the points are the newest stored ones. */
 public record AirQualitySeriesDto(
         AirQualityAveragesDto averages,
-        List<AirQualityPointDto> points
+        List<AirQualityPointDto> points,
+        boolean stale
 ) {}
@@ -0,0 +1,59 @@
+package com.milosz.podsiadly.backend.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Column-per-variable form of a history response: row {@code i} is at {@code start + i * step}
+ * seconds, or at {@code start + offsets[i]} when the rows are not on a regular grid (calendar
+ * intervals, LTTB-reduced series). NaN marks a missing value.
+ * Written by {@link ColumnarSeriesSerializer} as JSON and by the binary converter as float32 columns.
+ */
+@JsonSerialize(using = ColumnarSeriesSerializer.class)
+public record ColumnarSeriesDto(
+        LocationDto location,
+        String interval,
+        String source,
+        long start,
+        long step,
+        int length,
+        long[] offsets,
+        String[] names,
+        double[][] columns,
+        Map<String, Double> averages
+) {
+
+    public static final String JSON_VALUE = "application/vnd.weather.columnar+json";
+    public static final String BINARY_VALUE = "application/vnd.weather.columnar";
+
+    /**
+     * Builds the columns from bucket starts {@code times} (ascending epoch seconds) and values
+     * {@code cols[v][i]}, keeping only the {@code rows} given. With a fixed {@code step}, small gaps
+     * are filled with NaN rows so the times collapse to start + step; otherwise offsets are kept.
+     */
+    public static ColumnarSeriesDto of(LocationDto location, String interval, String source, long step,
+                                       long[] times, int[] rows, String[] names, double[][] cols,
+                                       Map<String, Double> averages) {
+        int n = rows.length;
+        long start = n == 0 ? 0 : times[rows[0]];
+
+        long gridLength = n == 0 || step <= 0 ? -1 : (times[rows[n - 1]] - start) / step + 1;
+        boolean onGrid = gridLength > 0 && gridLength <= 2L * n;
+        for (int k = 0; onGrid && k < n; k++) onGrid = (times[rows[k]] - start) % step == 0;
+
+        int length = onGrid ? (int) gridLength : n;
+        double[][] out = new double[cols.length][length];
+        long[] offsets = onGrid ? null : new long[n];
+        for (double[] c : out) Arrays.fill(c, Double.NaN);
+        for (int k = 0; k < n; k++) {
+            int i = rows[k];
+            int at = onGrid ? (int) ((times[i] - start) / step) : k;
+            if (!onGrid) offsets[k] = times[i] - start;
+            for (int v = 0; v < cols.length; v++) out[v][at] = cols[v][i];
+        }
+        return new ColumnarSeriesDto(location, interval, source, start, onGrid ? step : 0, length,
+                offsets, names, out, averages);
+    }
+}
@@ -0,0 +1,108 @@
+package com.milosz.podsiadly.backend.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Writes {@link ColumnarSeriesDto} straight from its arrays:
+ * <pre>
+ * {"location":{..},"interval":"1h","source":"..","start":"2024-01-01T00:00:00Z","step":3600,"length":3,
+ *  "columns":{"temperature":[1.5,null,2.0],"pm10":null}}
+ * </pre>
+ * A column with no values at all is a single {@code null}; irregular rows carry an {@code offsets}
+ * array (seconds from start) instead of {@code step}. Values are written at float precision, which
+ * is well past what the upstream data carries and keeps each number short.
+ */
+public class ColumnarSeriesSerializer extends StdSerializer<ColumnarSeriesDto> {
+
+    public ColumnarSeriesSerializer() {
+        super(ColumnarSeriesDto.class);
+    }
+
+    @Override
+    public void serialize(ColumnarSeriesDto s, JsonGenerator g, SerializerProvider provider) throws IOException {
+        g.writeStartObject();
+        if (s.location() != null) provider.defaultSerializeField("location", s.location(), g);
+        if (s.interval() != null) g.writeStringField("interval", s.interval());
+        if (s.source() != null) g.writeStringField("source", s.source());
+        g.writeStringField("start", Instant.ofEpochSecond(s.start()).toString());
+        if (s.offsets() == null) {
+            g.writeNumberField("step", s.step());
+        } else {
+            g.writeFieldName("offsets");
+            g.writeArray(s.offsets(), 0, s.offsets().length);
+        }
+        g.writeNumberField("length", s.length());
+
+        g.writeObjectFieldStart("columns");
+        for (int v = 0; v < s.names().length; v++) {
+            g.writeFieldName(s.names()[v]);
+            writeColumn(g, s.columns()[v], s.length());
+        }
+        g.writeEndObject();
+
+        if (s.averages() != null) {
+            g.writeObjectFieldStart("averages");
+            for (Map.Entry<String, Double> e : s.averages().entrySet()) {
+                if (e.getValue() == null) g.writeNullField(e.getKey());
+                else g.writeNumberField(e.getKey(), e.getValue());
+            }
+            g.writeEndObject();
+        }
+        g.writeEndObject();
+    }
+
+    private static void writeColumn(JsonGenerator g, double[] col, int length) throws IOException {
+        boolean any = false;
+        for (int i = 0; i < length && !any; i++) any = !Double.isNaN(col[i]);
+        if (!any) {
+            g.writeNull();
+            return;
+        }
+        g.writeStartArray(col, length);
+        char[] buf = new char[24];
+        for (int i = 0; i < length; i++) {
+            double x = col[i];
+            if (Double.isNaN(x)) {
+                g.writeNull();
+                continue;
+            }
+            int len = centiDigits(x, buf);
+            if (len > 0) g.writeRawValue(buf, 0, len);
+            else g.writeNumber((float) x);
+        }
+        g.writeEndArray();
+    }
+
+    /**
+     * Fast path for values with at most two decimals (most upstream readings): formats into
+     * {@code buf} and returns the length, or 0 when the value needs the general formatter.
+     */
+    static int centiDigits(double x, char[] buf) {
+        double scaled = x * 100;
+        long c = Math.round(scaled);
+        if (Math.abs(scaled - c) > 1e-6 || Math.abs(c) >= 1_000_000_000_000L) return 0;
+
+        int p = 0;
+        if (c < 0) {
+            buf[p++] = '-';
+            c = -c;
+        }
+        long whole = c / 100;
+        int frac = (int) (c % 100);
+        String w = Long.toString(whole);
+        w.getChars(0, w.length(), buf, p);
+        p += w.length();
+        if (frac != 0) {
+            buf[p++] = '.';
+            buf[p++] = (char) ('0' + frac / 10);
+            if (frac % 10 != 0) buf[p++] = (char) ('0' + frac % 10);
+        }
+        return p;
+    }
+}
@@ -1,2 +1,3 @@
 package com.milosz.podsiadly.backend.dto;
-public record WeatherCurrentDto(LocationDto location, WeatherPointDto data, String source) {}
\ No newline at end of file
+/** {@code stale}: upstream could not be reached and {@code data} is the newest stored hour. */
+public record WeatherCurrentDto(LocationDto location, WeatherPointDto data, String source, boolean stale) {}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.milosz.podsiadly.backend.dto;
 
 import java.util.List;
+/** {@code stale}: part of the range could not be fetched from upstream and is missing or older data. */
 public record WeatherHistoryResponseDto(
-        LocationDto location, String interval, List<WeatherPointDto> points, String source
+        LocationDto location, String interval, List<WeatherPointDto> points, String source, boolean stale
 ) {}
\ No newline at end of file
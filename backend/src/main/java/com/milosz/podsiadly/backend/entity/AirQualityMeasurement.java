@@ -4,18 +4,13 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.CompoundIndex;
-import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 @Setter
 @Getter
 @Builder(toBuilder = true)
-@Document(collection = "air_quality_measurement")
-@CompoundIndexes({
-        @CompoundIndex(name = "uk_aq_loc_time", def = "{'locationId': 1, 'recordedAt': 1}", unique = true)
-})
+@Document(collection = "#{@measurementCollections.airQuality()}")
 public class AirQualityMeasurement {
 
     @Id
@@ -2,6 +2,9 @@ package com.milosz.podsiadly.backend.entity;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.index.Indexed;
 
@@ -23,4 +26,49 @@ public class Location {
 
     private Double latitude;
     private Double longitude;
+
+    /** {@code [longitude, latitude]} for nearest-location lookups. */
+    @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
+    private GeoJsonPoint position;
+
+    /**
+     * The fixed lat/lon grid cell the location falls in and the cell's centre, under which the
+     * measurements of every location in the cell are fetched and stored. Null for locations stored
+     * before cells existed; those keep measurements under their own id.
+     */
+    private String cellId;
+    private Double cellLatitude;
+    private Double cellLongitude;
+
+    /** Key of the measurement rows, coverage and versions of this location. */
+    public String dataKey() {
+        return cellId != null ? cellId : id;
+    }
+
+    /** Latitude to ask upstream for. */
+    public Double dataLatitude() {
+        return cellId != null ? cellLatitude : latitude;
+    }
+
+    /** Longitude to ask upstream for. */
+    public Double dataLongitude() {
+        return cellId != null ? cellLongitude : longitude;
+    }
+
+    /**
+     * Puts the location into its cell of a grid {@code gridDegrees} wide in both directions. The cell
+     * depends on the coordinates alone, so the same point always lands in the same cell.
+     */
+    public void snapToGrid(double gridDegrees) {
+        long row = (long) Math.floor(latitude / gridDegrees);
+        long col = (long) Math.floor(longitude / gridDegrees);
+        this.cellId = "cell:" + gridDegrees + ":" + row + ":" + col;
+        this.cellLatitude = centre(row, gridDegrees);
+        this.cellLongitude = centre(col, gridDegrees);
+    }
+
+    /** Centre of grid line {@code index}, rounded so upstream URLs stay short and stable. */
+    private static double centre(long index, double gridDegrees) {
+        return Math.round((index + 0.5) * gridDegrees * 1e6) / 1e6;
+    }
 }
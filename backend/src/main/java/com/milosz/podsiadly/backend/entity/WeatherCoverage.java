@@ -0,0 +1,32 @@
+package com.milosz.podsiadly.backend.entity;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hour ranges of archive data already stored in {@code weather_measurements} for one location.
+ * Ranges are inclusive, hour aligned, sorted and non-adjacent.
+ */
+@Document(collection = "weather_coverage")
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor @Builder
+public class WeatherCoverage {
+
+    @Id
+    private String locationId;
+
+    @Builder.Default
+    private List<Range> ranges = new ArrayList<>();
+
+    @Getter @Setter
+    @NoArgsConstructor @AllArgsConstructor
+    public static class Range {
+        private Instant from;
+        private Instant to;
+    }
+}
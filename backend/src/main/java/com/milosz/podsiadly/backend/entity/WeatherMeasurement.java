@@ -2,12 +2,11 @@ package com.milosz.podsiadly.backend.entity;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 
-@Document(collection = "weather_measurements")
+@Document(collection = "#{@measurementCollections.weather()}")
 @Getter @Setter
 @NoArgsConstructor @AllArgsConstructor @Builder
 public class WeatherMeasurement {
@@ -15,10 +14,8 @@ public class WeatherMeasurement {
     @Id
     private String id;
 
-    @Indexed
     private String locationId;
 
-    @Indexed
     private Instant recordedAt;
 
     private Double temperature;
@@ -0,0 +1,7 @@
+package com.milosz.podsiadly.backend.repository;
+
+import com.milosz.podsiadly.backend.entity.WeatherCoverage;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface WeatherCoverageRepository extends MongoRepository<WeatherCoverage, String> {
+}
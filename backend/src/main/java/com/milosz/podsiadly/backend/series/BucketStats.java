@@ -0,0 +1,145 @@
+package com.milosz.podsiadly.backend.series;
+
+import java.util.Arrays;
+
+/**
+ * Per-bucket count, sum, min and max of every variable of an {@link HourlySeries}.
+ * Built in one pass over the primitive columns; NaN values are skipped, not counted as zero.
+ */
+public final class BucketStats {
+
+    private static final long HOUR = 3600;
+
+    private final String[] variables;
+    private final long[] starts;
+    private final int[][] count;
+    private final double[][] sum;
+    private final double[][] min;
+    private final double[][] max;
+    private int size;
+
+    private BucketStats(String[] variables, int capacity) {
+        int vars = variables.length;
+        this.variables = variables;
+        this.starts = new long[capacity];
+        this.count = new int[vars][capacity];
+        this.sum = new double[vars][capacity];
+        this.min = new double[vars][capacity];
+        this.max = new double[vars][capacity];
+        for (int v = 0; v < vars; v++) {
+            Arrays.fill(min[v], Double.POSITIVE_INFINITY);
+            Arrays.fill(max[v], Double.NEGATIVE_INFINITY);
+        }
+    }
+
+    /** Buckets every present hour of {@code s}; buckets with no rows are omitted. */
+    public static BucketStats of(HourlySeries s, Interval interval) {
+        String[] vars = s.variables();
+        int capacity = Math.min(s.presentCount(),
+                interval.maxBuckets(s.startHour() * HOUR, s.endHour() * HOUR));
+        BucketStats out = new BucketStats(vars, capacity);
+
+        double[][] cols = new double[vars.length][];
+        for (int v = 0; v < vars.length; v++) cols[v] = s.column(v);
+
+        int b = -1;
+        long next = Long.MIN_VALUE;
+        for (int o = s.nextPresent(0); o >= 0; o = s.nextPresent(o + 1)) {
+            long sec = (s.startHour() + o) * HOUR;
+            if (b < 0 || sec >= next) {
+                long start = interval.bucketStart(sec);
+                next = interval.nextBucket(start);
+                out.starts[++b] = start;
+            }
+            for (int v = 0; v < cols.length; v++) {
+                double x = cols[v][o];
+                if (Double.isNaN(x)) continue;
+                out.count[v][b]++;
+                out.sum[v][b] += x;
+                if (x < out.min[v][b]) out.min[v][b] = x;
+                if (x > out.max[v][b]) out.max[v][b] = x;
+            }
+        }
+        out.size = b + 1;
+        return out;
+    }
+
+    /**
+     * Empty table for buckets computed elsewhere, e.g. by a database {@code $group};
+     * fill it with {@link #append} and {@link #accumulate}.
+     */
+    public static BucketStats empty(String[] variables, int capacity) {
+        return new BucketStats(variables.clone(), capacity);
+    }
+
+    /** Adds a bucket after the last one and returns its index; starts must ascend. */
+    public int append(long startSecond) {
+        if (size > 0 && startSecond <= starts[size - 1]) {
+            throw new IllegalArgumentException("Bucket starts must ascend: " + startSecond);
+        }
+        starts[size] = startSecond;
+        return size++;
+    }
+
+    /** Folds pre-aggregated values of one variable into a bucket. */
+    public void accumulate(int variable, int bucket, int n, double total, double lo, double hi) {
+        if (n <= 0) return;
+        count[variable][bucket] += n;
+        sum[variable][bucket] += total;
+        if (lo < min[variable][bucket]) min[variable][bucket] = lo;
+        if (hi > max[variable][bucket]) max[variable][bucket] = hi;
+    }
+
+    /**
+     * Union of two tables over the same variables; buckets with the same start are combined.
+     * Both inputs must come from the same {@link Interval} so their bucket edges line up.
+     */
+    public BucketStats merge(BucketStats other) {
+        if (other.size == 0) return this;
+        if (size == 0) return other;
+        BucketStats out = new BucketStats(variables, size + other.size);
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            long a = i < size ? starts[i] : Long.MAX_VALUE;
+            long b = j < other.size ? other.starts[j] : Long.MAX_VALUE;
+            int k = out.append(Math.min(a, b));
+            if (a <= b) out.copyFrom(this, i++, k);
+            if (b <= a) out.copyFrom(other, j++, k);
+        }
+        return out;
+    }
+
+    private void copyFrom(BucketStats src, int from, int to) {
+        for (int v = 0; v < variables.length; v++) {
+            accumulate(v, to, src.count[v][from], src.sum[v][from], src.min[v][from], src.max[v][from]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String[] variables() {
+        return variables.clone();
+    }
+
+    public long startSecond(int bucket) {
+        return starts[bucket];
+    }
+
+    public int count(int variable, int bucket) {
+        return count[variable][bucket];
+    }
+
+    /** The statistic for one bucket, NaN when the variable has no values there. */
+    public double value(int variable, int bucket, Statistic stat) {
+        int n = count[variable][bucket];
+        if (n == 0) return Double.NaN;
+        return switch (stat) {
+            case MEAN -> sum[variable][bucket] / n;
+            case SUM -> sum[variable][bucket];
+            case MIN -> min[variable][bucket];
+            case MAX -> max[variable][bucket];
+        };
+    }
+}
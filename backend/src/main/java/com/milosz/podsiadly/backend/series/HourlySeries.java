@@ -0,0 +1,180 @@
+package com.milosz.podsiadly.backend.series;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Dense hourly grid: one {@code double[]} per variable indexed by {@code hour - startHour},
+ * NaN for missing values, plus a bitset of hours that hold a row at all.
+ * Hours are epoch hours ({@code epochSecond / 3600}).
+ */
+public final class HourlySeries {
+
+    private static final long HOUR = 3600;
+
+    private final String[] variables;
+    private final long startHour;
+    private final int length;
+    private final double[][] values;
+    private final BitSet present;
+
+    private HourlySeries(String[] variables, long startHour, int length) {
+        this.variables = variables;
+        this.startHour = startHour;
+        this.length = length;
+        this.values = new double[variables.length][length];
+        this.present = new BitSet(length);
+        for (double[] col : values) Arrays.fill(col, Double.NaN);
+    }
+
+    /** Empty series covering {@code [fromHour, toHour]} inclusive. */
+    public static HourlySeries span(long fromHour, long toHour, String... variables) {
+        int len = (int) Math.max(0, toHour - fromHour + 1);
+        return new HourlySeries(variables.clone(), fromHour, len);
+    }
+
+    public static long epochHour(Instant t) {
+        return Math.floorDiv(t.getEpochSecond(), HOUR);
+    }
+
+    /** First whole hour at or after {@code t}. */
+    public static long ceilHour(Instant t) {
+        return Math.floorDiv(t.getEpochSecond() + HOUR - 1, HOUR);
+    }
+
+    public static Instant toInstant(long hour) {
+        return Instant.ofEpochSecond(hour * HOUR);
+    }
+
+    public String[] variables() {
+        return variables.clone();
+    }
+
+    public int variableIndex(String variable) {
+        for (int i = 0; i < variables.length; i++) if (variables[i].equals(variable)) return i;
+        return -1;
+    }
+
+    public long startHour() {
+        return startHour;
+    }
+
+    public long endHour() {
+        return startHour + length - 1;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return present.isEmpty();
+    }
+
+    public int presentCount() {
+        return present.cardinality();
+    }
+
+    public boolean contains(long hour) {
+        return hour >= startHour && hour < startHour + length;
+    }
+
+    public boolean isPresentAt(int offset) {
+        return present.get(offset);
+    }
+
+    /** Offset of the next row at or after {@code offset}, or -1. */
+    public int nextPresent(int offset) {
+        int i = present.nextSetBit(offset);
+        return i < 0 || i >= length ? -1 : i;
+    }
+
+    /** Offset of the next hour without a row at or after {@code offset}; {@link #length()} if none. */
+    public int nextAbsent(int offset) {
+        return Math.min(present.nextClearBit(offset), length);
+    }
+
+    /** Offset of the last row, or -1. */
+    public int lastPresent() {
+        return present.previousSetBit(length - 1);
+    }
+
+    public Instant instantAt(int offset) {
+        return toInstant(startHour + offset);
+    }
+
+    public double at(int variable, int offset) {
+        return values[variable][offset];
+    }
+
+    /** Backing column, indexed by offset. Values of hours without a row are NaN. */
+    public double[] column(int variable) {
+        return values[variable];
+    }
+
+    /** Marks {@code hour} as holding a row; returns its offset, or -1 if outside the span. */
+    public int touch(long hour) {
+        if (!contains(hour)) return -1;
+        int off = (int) (hour - startHour);
+        present.set(off);
+        return off;
+    }
+
+    public void set(int variable, int offset, double value) {
+        values[variable][offset] = Double.isInfinite(value) ? Double.NaN : value;
+    }
+
+    public void set(int variable, int offset, Double value) {
+        set(variable, offset, value == null ? Double.NaN : value);
+    }
+
+    /** Copy of {@code [fromHour, toHour]}; hours outside this span come back empty. */
+    public HourlySeries slice(long fromHour, long toHour) {
+        HourlySeries out = span(fromHour, toHour, variables);
+        long lo = Math.max(fromHour, startHour);
+        long hi = Math.min(toHour, endHour());
+        if (lo > hi) return out;
+        int src = (int) (lo - startHour), dst = (int) (lo - fromHour), n = (int) (hi - lo + 1);
+        for (int v = 0; v < variables.length; v++) System.arraycopy(values[v], src, out.values[v], dst, n);
+        for (int i = present.nextSetBit(src); i >= 0 && i < src + n; i = present.nextSetBit(i + 1)) {
+            out.present.set(dst + i - src);
+        }
+        return out;
+    }
+
+    /**
+     * Rows present in {@code other} replace the rows at the same hours here, variable by name.
+     * Variables missing from {@code other} become NaN on those rows.
+     */
+    public void overlay(HourlySeries other) {
+        int[] map = mapping(other);
+        long shift = other.startHour - startHour;
+        for (int i = other.present.nextSetBit(0); i >= 0 && i < other.length; i = other.present.nextSetBit(i + 1)) {
+            long off = i + shift;
+            if (off < 0 || off >= length) continue;
+            int o = (int) off;
+            present.set(o);
+            for (int v = 0; v < variables.length; v++) {
+                values[v][o] = map[v] < 0 ? Double.NaN : other.values[map[v]][i];
+            }
+        }
+    }
+
+    /** Copies {@code other}'s {@code sourceVariable} into {@code variable}, aligned by hour. Presence is unchanged. */
+    public void join(String variable, HourlySeries other, String sourceVariable) {
+        int v = variableIndex(variable);
+        int s = other.variableIndex(sourceVariable);
+        if (v < 0) throw new IllegalArgumentException("Unknown variable: " + variable);
+        long lo = Math.max(startHour, other.startHour);
+        long hi = Math.min(endHour(), other.endHour());
+        if (s < 0 || lo > hi) return;
+        System.arraycopy(other.values[s], (int) (lo - other.startHour), values[v], (int) (lo - startHour), (int) (hi - lo + 1));
+    }
+
+    private int[] mapping(HourlySeries other) {
+        int[] map = new int[variables.length];
+        for (int v = 0; v < variables.length; v++) map[v] = other.variableIndex(variables[v]);
+        return map;
+    }
+}
@@ -0,0 +1,96 @@
+package com.milosz.podsiadly.backend.series;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bucket width for aggregation: a fixed number of seconds ({@code 1h}, {@code 2h}, {@code 1d}, {@code 1w})
+ * or a number of calendar months in UTC ({@code 1mo}). Weeks start on Monday.
+ */
+public final class Interval {
+
+    private static final Pattern FORMAT = Pattern.compile("(\\d+)\\s*(h|d|w|mo|y)");
+    private static final long HOUR = 3600, DAY = 86_400, WEEK = 7 * DAY;
+    /** 1970-01-05, the first Monday after the epoch. */
+    private static final long MONDAY_OFFSET = 4 * DAY;
+
+    public static final Interval HOURLY = new Interval(HOUR, 0, 0);
+
+    private final long seconds;
+    private final long origin;
+    private final int months;
+
+    private Interval(long seconds, long origin, int months) {
+        this.seconds = seconds;
+        this.origin = origin;
+        this.months = months;
+    }
+
+    /** Parses {@code 1h}, {@code 24h}, {@code 1d}, {@code 1w}, {@code 1mo}, {@code 1y}; anything else is hourly. */
+    public static Interval parse(String s) {
+        if (s == null) return HOURLY;
+        Matcher m = FORMAT.matcher(s.trim().toLowerCase(Locale.ROOT));
+        if (!m.matches()) return HOURLY;
+        int n = Integer.parseInt(m.group(1));
+        if (n <= 0) return HOURLY;
+        return switch (m.group(2)) {
+            case "h" -> new Interval(n * HOUR, 0, 0);
+            case "d" -> new Interval(n * DAY, 0, 0);
+            case "w" -> new Interval(n * WEEK, MONDAY_OFFSET, 0);
+            case "mo" -> new Interval(0, 0, n);
+            case "y" -> new Interval(0, 0, 12 * n);
+            default -> HOURLY;
+        };
+    }
+
+    public boolean isCalendar() {
+        return months > 0;
+    }
+
+    /** Fixed width in seconds; 0 for calendar intervals. */
+    public long seconds() {
+        return seconds;
+    }
+
+    public int months() {
+        return months;
+    }
+
+    public long bucketStart(long epochSecond) {
+        if (months == 0) return Math.floorDiv(epochSecond - origin, seconds) * seconds + origin;
+        return monthStart(Math.floorDiv(monthIndex(epochSecond), months) * months);
+    }
+
+    /** Offset added before flooring to {@link #seconds()}: Mondays for weeks, 0 otherwise. */
+    public long origin() {
+        return origin;
+    }
+
+    /** {@code year * 12 + month - 1} of a UTC instant; calendar buckets are multiples of {@link #months()}. */
+    public static long monthIndex(long epochSecond) {
+        LocalDate d = LocalDate.ofEpochDay(Math.floorDiv(epochSecond, DAY));
+        return (long) d.getYear() * 12 + d.getMonthValue() - 1;
+    }
+
+    /** Epoch second of midnight UTC on the first day of month {@code index}. */
+    public static long monthStart(long index) {
+        return LocalDate.of((int) Math.floorDiv(index, 12), (int) Math.floorMod(index, 12) + 1, 1)
+                .atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public long nextBucket(long bucketStart) {
+        if (months == 0) return bucketStart + seconds;
+        return LocalDate.ofEpochDay(Math.floorDiv(bucketStart, DAY)).plusMonths(months)
+                .atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /** Upper bound on buckets touched by {@code [fromSecond, toSecond]}. */
+    public int maxBuckets(long fromSecond, long toSecond) {
+        long span = Math.max(0, toSecond - fromSecond);
+        long n = months == 0 ? span / seconds + 2 : span / (28 * DAY * months) + 2;
+        return (int) Math.min(n, Integer.MAX_VALUE - 8);
+    }
+}
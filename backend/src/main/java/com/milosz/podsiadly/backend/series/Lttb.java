@@ -0,0 +1,109 @@
+package com.milosz.podsiadly.backend.series;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling. Runs per variable on its non-NaN points;
+ * the rows kept are the union of every variable's picks, so each line keeps its own shape.
+ */
+public final class Lttb {
+
+    private static final int MIN_THRESHOLD = 3;
+
+    private Lttb() {}
+
+    /**
+     * Indices (ascending) of at most {@code maxPoints} rows out of {@code size} to keep.
+     * {@code x} must be ascending; {@code ys[v][i]} is variable {@code v} at row {@code i}.
+     */
+    public static int[] select(long[] x, double[][] ys, int size, int maxPoints) {
+        if (maxPoints <= 0 || size <= maxPoints) return identity(size);
+
+        int threshold = Math.max(MIN_THRESHOLD, maxPoints);
+        BitSet keep = union(x, ys, size, threshold);
+        for (int round = 0; keep.cardinality() > maxPoints && threshold > MIN_THRESHOLD && round < 8; round++) {
+            threshold = Math.max(MIN_THRESHOLD, (int) ((long) threshold * maxPoints / keep.cardinality()) - 1);
+            keep = union(x, ys, size, threshold);
+        }
+        return thin(keep.stream().toArray(), maxPoints);
+    }
+
+    /** Evenly spaced subset keeping first and last; only hit when maxPoints is tiny. */
+    private static int[] thin(int[] rows, int maxPoints) {
+        if (rows.length <= maxPoints) return rows;
+        if (maxPoints == 1) return new int[] { rows[0] };
+        int[] out = new int[maxPoints];
+        for (int i = 0; i < maxPoints; i++) out[i] = rows[(int) ((long) i * (rows.length - 1) / (maxPoints - 1))];
+        return out;
+    }
+
+    private static BitSet union(long[] x, double[][] ys, int size, int threshold) {
+        BitSet keep = new BitSet(size);
+        int[] idx = new int[size];
+        for (double[] y : ys) {
+            int m = 0;
+            for (int i = 0; i < size; i++) if (!Double.isNaN(y[i])) idx[m++] = i;
+            pick(x, y, idx, m, threshold, keep);
+        }
+        if (keep.isEmpty() && size > 0) {
+            keep.set(0);
+            keep.set(size - 1);
+        }
+        return keep;
+    }
+
+    /** Classic LTTB over the rows {@code idx[0..m)}; marks chosen rows in {@code keep}. */
+    private static void pick(long[] x, double[] y, int[] idx, int m, int threshold, BitSet keep) {
+        if (m == 0) return;
+        if (m <= threshold) {
+            for (int i = 0; i < m; i++) keep.set(idx[i]);
+            return;
+        }
+
+        double every = (double) (m - 2) / (threshold - 2);
+        int a = 0;
+        keep.set(idx[0]);
+
+        for (int b = 0; b < threshold - 2; b++) {
+            int avgStart = (int) Math.floor((b + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((b + 2) * every) + 1, m);
+            double avgX = 0, avgY = 0;
+            int avgLen = avgEnd - avgStart;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += x[idx[j]];
+                avgY += y[idx[j]];
+            }
+            if (avgLen > 0) {
+                avgX /= avgLen;
+                avgY /= avgLen;
+            } else {
+                avgX = x[idx[m - 1]];
+                avgY = y[idx[m - 1]];
+            }
+
+            int rangeStart = (int) Math.floor(b * every) + 1;
+            int rangeEnd = (int) Math.floor((b + 1) * every) + 1;
+            double ax = x[idx[a]], ay = y[idx[a]];
+
+            double best = -1;
+            int chosen = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (y[idx[j]] - ay) - (ax - x[idx[j]]) * (avgY - ay));
+                if (area > best) {
+                    best = area;
+                    chosen = j;
+                }
+            }
+            keep.set(idx[chosen]);
+            a = chosen;
+        }
+        keep.set(idx[m - 1]);
+    }
+
+    private static int[] identity(int size) {
+        int[] all = new int[size];
+        Arrays.setAll(all, i -> i);
+        return all;
+    }
+}
@@ -0,0 +1,83 @@
+package com.milosz.podsiadly.backend.series;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Single-bucket counterpart of {@link BucketStats} for ascending streams: rows are folded into
+ * the open bucket and each bucket is handed to the sink as soon as a row past its end arrives,
+ * so memory does not grow with the length of the stream.
+ */
+public final class RunningBuckets {
+
+    @FunctionalInterface
+    public interface Sink {
+        /** {@code bucket} is only valid during the call. */
+        void accept(long startSecond, RunningBuckets bucket) throws IOException;
+    }
+
+    private final Interval interval;
+    private final Sink sink;
+    private final int[] count;
+    private final double[] sum;
+    private final double[] min;
+    private final double[] max;
+
+    private boolean open;
+    private long start;
+    private long next;
+
+    public RunningBuckets(int variables, Interval interval, Sink sink) {
+        this.interval = interval;
+        this.sink = sink;
+        this.count = new int[variables];
+        this.sum = new double[variables];
+        this.min = new double[variables];
+        this.max = new double[variables];
+        reset();
+    }
+
+    /** Adds one row; {@code epochSecond} must not go backwards. NaN values are skipped. */
+    public void add(long epochSecond, double[] row) throws IOException {
+        if (!open || epochSecond >= next) {
+            finish();
+            start = interval.bucketStart(epochSecond);
+            next = interval.nextBucket(start);
+            open = true;
+        }
+        for (int v = 0; v < row.length; v++) {
+            double x = row[v];
+            if (Double.isNaN(x)) continue;
+            count[v]++;
+            sum[v] += x;
+            if (x < min[v]) min[v] = x;
+            if (x > max[v]) max[v] = x;
+        }
+    }
+
+    /** Emits the open bucket, if any. */
+    public void finish() throws IOException {
+        if (open) sink.accept(start, this);
+        open = false;
+        reset();
+    }
+
+    private void reset() {
+        Arrays.fill(count, 0);
+        Arrays.fill(sum, 0);
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    /** The statistic for the bucket being emitted, NaN when the variable has no values in it. */
+    public double value(int variable, Statistic stat) {
+        int n = count[variable];
+        if (n == 0) return Double.NaN;
+        return switch (stat) {
+            case MEAN -> sum[variable] / n;
+            case SUM -> sum[variable];
+            case MIN -> min[variable];
+            case MAX -> max[variable];
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package com.milosz.podsiadly.backend.series;
+
+import java.util.Locale;
+
+public enum Statistic {
+    MEAN, MIN, MAX, SUM;
+
+    public static Statistic parse(String s) {
+        return switch (s.trim().toLowerCase(Locale.ROOT)) {
+            case "mean", "avg" -> MEAN;
+            case "min" -> MIN;
+            case "max" -> MAX;
+            case "sum" -> SUM;
+            default -> throw new IllegalArgumentException("Unknown aggregation: " + s);
+        };
+    }
+}
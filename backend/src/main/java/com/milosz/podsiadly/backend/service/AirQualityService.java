@@ -1,34 +1,38 @@
 package com.milosz.podsiadly.backend.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.milosz.podsiadly.backend.config.MeasurementCollections;
 import com.milosz.podsiadly.backend.dto.AirQualityAveragesDto;
 import com.milosz.podsiadly.backend.dto.AirQualityPointDto;
 import com.milosz.podsiadly.backend.dto.AirQualitySeriesDto;
+import com.milosz.podsiadly.backend.dto.ColumnarSeriesDto;
 import com.milosz.podsiadly.backend.entity.AirQualityMeasurement;
 import com.milosz.podsiadly.backend.entity.Location;
-import com.milosz.podsiadly.backend.mapper.AirQualityMapper;
-import com.milosz.podsiadly.backend.repository.LocationRepository;
+import com.milosz.podsiadly.backend.series.BucketStats;
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import com.milosz.podsiadly.backend.series.Interval;
+import com.milosz.podsiadly.backend.series.RunningBuckets;
+import com.milosz.podsiadly.backend.series.Statistic;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoClient;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoHourly;
+import com.milosz.podsiadly.backend.upstream.Revalidation;
+import com.milosz.podsiadly.backend.upstream.SingleFlight;
+import com.milosz.podsiadly.backend.upstream.UpstreamResponse;
+import org.bson.Document;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.mongodb.core.query.Update;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClient;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
-
-import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class AirQualityService {
@@ -43,152 +47,298 @@ public class AirQualityService {
     private static final DateTimeFormatter ISO_UTC =
             DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(ZoneOffset.UTC);
 
-    private static final DateTimeFormatter OM_HOURLY =
-            new DateTimeFormatterBuilder()
-                    .appendPattern("yyyy-MM-dd'T'HH:mm")
-                    .optionalStart().appendPattern(":ss").optionalEnd()
-                    .optionalStart().appendLiteral('Z').optionalEnd()
-                    .toFormatter();
+    private static final String[] HOURLY_COLUMNS = HOURLY_PARAMS.split(",");
 
-    private final RestClient http;
-    private final MongoTemplate mongo;
-    private final LocationRepository locations;
-    private final AirQualityMapper mapper;
-    private final ObjectMapper om = new ObjectMapper();
+    static final String[] VARIABLES = { "pm10", "pm25", "co", "co2", "no2", "so2", "o3", "ch4", "uv" };
+    private static final int PM10 = 0, PM25 = 1, CO = 2, CO2 = 3, NO2 = 4, SO2 = 5, O3 = 6, CH4 = 7, UV = 8;
+
+    private static final int STREAM_BATCH = 1000;
+
+    private static final String[] OM_COLUMNS = {
+            "pm10", "pm2_5", "carbon_monoxide", "carbon_dioxide",
+            "nitrogen_dioxide", "sulphur_dioxide", "ozone", "methane", "uv_index"
+    };
 
-    public AirQualityService(RestClient http,
+    private final OpenMeteoClient http;
+    private final SingleFlight flights;
+    private final Revalidation revalidation;
+    private final MongoTemplate mongo;
+    private final LocationService locations;
+    private final MeasurementStore store;
+    private final MeasurementCollections collections;
+    private final MeasurementRollups rollups;
+    private final MeasurementVersions versions;
+    private final HotLocations hotLocations;
+    private final MeasurementWriteBehind writeBehind;
+
+    public AirQualityService(OpenMeteoClient http,
+                             SingleFlight flights,
+                             Revalidation revalidation,
                              MongoTemplate mongo,
-                             LocationRepository locations,
-                             AirQualityMapper mapper) {
+                             LocationService locations,
+                             MeasurementStore store,
+                             MeasurementCollections collections,
+                             MeasurementRollups rollups,
+                             MeasurementVersions versions,
+                             HotLocations hotLocations,
+                             MeasurementWriteBehind writeBehind) {
         this.http = http;
+        this.flights = flights;
+        this.revalidation = revalidation;
         this.mongo = mongo;
+        this.store = store;
+        this.collections = collections;
+        this.rollups = rollups;
+        this.versions = versions;
+        this.hotLocations = hotLocations;
+        this.writeBehind = writeBehind;
         this.locations = locations;
-        this.mapper = mapper;
     }
 
     public AirQualitySeriesDto live(String locationId, Instant from, Instant to) {
         requireValidWindow(from, to);
 
-        Location loc = locations.findById(locationId)
-                .orElseThrow(() -> new IllegalArgumentException("Location not found: " + locationId));
-
-        List<AirQualityPointDto> fetched = fetchFromOpenMeteo(latOf(loc), lonOf(loc), from, to);
-        if (!fetched.isEmpty()) upsertBatch(locationId, fetched);
+        Location loc = locations.require(locationId);
+
+        // Rows and upstream calls belong to the location's grid cell, shared with nearby locations.
+        String key = loc.dataKey();
+        double lat = loc.dataLatitude(), lon = loc.dataLongitude();
+        // Concurrent callers in the same hour share the fetch and the write; each reads its own window.
+        Supplier<HourlySeries> fresh = () -> flights.run("air-quality.live", key, seriesUrl(lat, lon, from, to), () -> {
+            HourlySeries s = fetchSeries(lat, lon, from, to);
+            upsertLater(key, s, null);
+            return s;
+        });
+        hotLocations.touch(key);
+        long hour = HourlySeries.epochHour(to);
+        HourlySeries fetched = HourlySeries.span(hour, hour - 1, VARIABLES);
+        boolean stale = false;
+        try {
+            // Rows ingested in the background are recent enough; only go upstream without them.
+            if (!hotLocations.isFresh(key)) fetched = fresh.get();
+        } catch (RuntimeException e) {
+            // Serve what is stored right away and refresh once upstream answers again.
+            stale = true;
+            revalidation.submit("air-quality.live:" + key, fresh::get);
+        }
 
-        List<AirQualityPointDto> dbPoints = history(locationId, from, to);
-        Map<Instant, AirQualityPointDto> byTime = new java.util.HashMap<>();
-        for (var p : dbPoints) byTime.put(p.time(), p);
-        for (var p : fetched)  byTime.put(p.time(), p);
+        HourlySeries merged = loadSeries(key, from, to);
+        merged.overlay(fetched);
 
-        if (byTime.isEmpty()) {
-            return new AirQualitySeriesDto(new AirQualityAveragesDto(null,null,null,null,null,null,null,null,null), List.of());
+        int last = merged.lastPresent();
+        if (last < 0) {
+            return new AirQualitySeriesDto(new AirQualityAveragesDto(null,null,null,null,null,null,null,null,null), List.of(), stale);
         }
 
-        Instant latest = byTime.keySet().stream().max(Instant::compareTo).get()
-                .truncatedTo(java.time.temporal.ChronoUnit.HOURS);
-        Instant start  = latest.minus(23, java.time.temporal.ChronoUnit.HOURS);
+        long latest = merged.startHour() + last;
+        HourlySeries window = merged.slice(latest - 23, latest);
 
-        java.util.List<AirQualityPointDto> series = new java.util.ArrayList<>(24);
-        for (Instant t = start; !t.isAfter(latest); t = t.plus(1, java.time.temporal.ChronoUnit.HOURS)) {
-            AirQualityPointDto p = byTime.get(t);
-            series.add(p != null ? p
-                    : new AirQualityPointDto(t, null,null,null,null,null,null,null,null,null));
-        }
+        List<AirQualityPointDto> series = new ArrayList<>(window.length());
+        for (int o = 0; o < window.length(); o++) series.add(toPoint(window, o));
 
-        AirQualityAveragesDto averages = computeAverages(series);
-        return new AirQualitySeriesDto(averages, series);
+        return new AirQualitySeriesDto(averages(window), series, stale);
     }
 
     public List<AirQualityPointDto> history(String locationId, Instant from, Instant to) {
+        return history(locationId, from, to, null);
+    }
+
+    /** Stored rows averaged per {@code interval} bucket ({@code 1h} when null), grouped inside Mongo or read from rollups. */
+    public List<AirQualityPointDto> history(String locationId, Instant from, Instant to, String interval) {
         if (!isValidWindow(from, to)) return List.of();
 
+        BucketStats b = rollups.aggregate(MeasurementRollups.Family.AIR_QUALITY, locationId,
+                from, to, Interval.parse(interval), null);
+        List<AirQualityPointDto> out = new ArrayList<>(b.size());
+        for (int i = 0; i < b.size(); i++) {
+            out.add(new AirQualityPointDto(
+                    Instant.ofEpochSecond(b.startSecond(i)),
+                    mean(b, PM10, i), mean(b, PM25, i),
+                    mean(b, CO, i),   mean(b, CO2, i),
+                    mean(b, NO2, i),  mean(b, SO2, i),
+                    mean(b, O3, i),   mean(b, CH4, i),
+                    mean(b, UV, i)
+            ));
+        }
+        return out;
+    }
+
+    /** Columnar form of {@link #history(String, Instant, Instant, String)} with the averages of the columns. */
+    public ColumnarSeriesDto historyColumnar(String locationId, Instant from, Instant to, String interval) {
+        Interval iv = Interval.parse(interval);
+        BucketStats b = isValidWindow(from, to)
+                ? rollups.aggregate(MeasurementRollups.Family.AIR_QUALITY, locationId, from, to, iv, null)
+                : BucketStats.empty(VARIABLES, 0);
+
+        int n = b.size();
+        long[] times = new long[n];
+        int[] rows = new int[n];
+        double[][] cols = new double[VARIABLES.length][n];
+        for (int i = 0; i < n; i++) {
+            times[i] = b.startSecond(i);
+            rows[i] = i;
+            for (int v = 0; v < VARIABLES.length; v++) cols[v][i] = b.value(v, i, Statistic.MEAN);
+        }
+
+        Map<String, Double> averages = new LinkedHashMap<>();
+        for (int v = 0; v < VARIABLES.length; v++) averages.put(VARIABLES[v], avg(cols[v]));
+
+        return ColumnarSeriesDto.of(null, interval, null, iv.seconds(), times, rows, VARIABLES, cols, averages);
+    }
+
+    /** Streaming form of {@link #history(String, Instant, Instant, String)}, read through a Mongo cursor. */
+    public void streamHistory(String locationId, Instant from, Instant to, String interval,
+                              PointSink<AirQualityPointDto> sink) throws IOException {
+        if (!isValidWindow(from, to)) return;
+
+        RunningBuckets buckets = new RunningBuckets(VARIABLES.length, Interval.parse(interval),
+                (start, b) -> sink.accept(new AirQualityPointDto(
+                        Instant.ofEpochSecond(start),
+                        mean(b, PM10), mean(b, PM25),
+                        mean(b, CO),   mean(b, CO2),
+                        mean(b, NO2),  mean(b, SO2),
+                        mean(b, O3),   mean(b, CH4),
+                        mean(b, UV)
+                )));
+
+        Query q = new Query(Criteria.where("locationId").is(locationId).and("recordedAt").gte(from).lte(to))
+                .with(Sort.by(Sort.Direction.ASC, "recordedAt"))
+                .cursorBatchSize(STREAM_BATCH);
+        q.fields().include("recordedAt").include(VARIABLES);
+
+        double[] row = new double[VARIABLES.length];
+        long previous = Long.MIN_VALUE;
+        try (Stream<Document> docs = mongo.stream(q, Document.class, collections.airQuality())) {
+            Iterator<Document> it = docs.iterator();
+            while (it.hasNext()) {
+                Document d = it.next();
+                long sec = Math.floorDiv(d.getDate("recordedAt").getTime(), 3_600_000L) * 3600;
+                if (sec == previous) continue;
+                for (int v = 0; v < VARIABLES.length; v++) {
+                    Object x = d.get(VARIABLES[v]);
+                    row[v] = x instanceof Number n ? n.doubleValue() : Double.NaN;
+                }
+                buckets.add(sec, row);
+                previous = sec;
+            }
+        }
+        buckets.finish();
+    }
+
+    private HourlySeries loadSeries(String locationId, Instant from, Instant to) {
+        HourlySeries s = HourlySeries.span(HourlySeries.ceilHour(from), HourlySeries.epochHour(to), VARIABLES);
+        if (!isValidWindow(from, to)) return s;
+
         Query q = new Query(Criteria.where("locationId").is(locationId)
                 .and("recordedAt").gte(from).lte(to));
         q.with(Sort.by(Sort.Direction.ASC, "recordedAt"));
 
-        var docs = mongo.find(q, AirQualityMeasurement.class);
-        return docs.stream().map(mapper::toDto).collect(Collectors.toList());
+        for (AirQualityMeasurement m : mongo.find(q, AirQualityMeasurement.class)) {
+            int o = s.touch(HourlySeries.epochHour(m.getRecordedAt()));
+            if (o < 0) continue;
+            s.set(PM10, o, m.getPm10());
+            s.set(PM25, o, m.getPm25());
+            s.set(CO, o, m.getCo());
+            s.set(CO2, o, m.getCo2());
+            s.set(NO2, o, m.getNo2());
+            s.set(SO2, o, m.getSo2());
+            s.set(O3, o, m.getO3());
+            s.set(CH4, o, m.getCh4());
+            s.set(UV, o, m.getUv());
+        }
+        return s;
     }
 
-    public List<AirQualityPointDto> fetchFromOpenMeteo(double lat, double lon, Instant from, Instant to) {
+    private HourlySeries fetchSeries(double lat, double lon, Instant from, Instant to) {
         Instant start = from.truncatedTo(ChronoUnit.MINUTES);
         Instant end   = to.truncatedTo(ChronoUnit.MINUTES);
 
-        String url = buildUrl(lat, lon, start, end);
+        UpstreamResponse resp = http.fetch(seriesUrl(lat, lon, from, to));
+        String body = Objects.requireNonNullElse(resp.body(), "{}");
+        Instant apiNow = resp.date();
 
-        ResponseEntity<String> resp = http.get().uri(url).retrieve().toEntity(String.class);
-        String body = Objects.requireNonNullElse(resp.getBody(), "{}");
+        long lastHour = HourlySeries.epochHour(end);
+        if (apiNow != null) lastHour = Math.min(lastHour, HourlySeries.epochHour(apiNow));
 
-        Instant apiNow = null;
         try {
-            String dateHeader = resp.getHeaders().getFirst("Date");
-            if (dateHeader != null) apiNow = ZonedDateTime.parse(dateHeader, RFC_1123_DATE_TIME).toInstant();
-        } catch (Exception ignored) { /* safe to ignore; frontend clamps too */ }
-
-        try {
-            JsonNode hourly = om.readTree(body).path("hourly");
-
-            List<String> times = toStrList(hourly.path("time"));
-            List<Double> pm10  = toDblList(hourly.path("pm10"));
-            List<Double> pm25  = toDblList(hourly.path("pm2_5"));
-            List<Double> co    = toDblList(hourly.path("carbon_monoxide"));
-            List<Double> co2   = toDblList(hourly.path("carbon_dioxide"));
-            List<Double> no2   = toDblList(hourly.path("nitrogen_dioxide"));
-            List<Double> so2   = toDblList(hourly.path("sulphur_dioxide"));
-            List<Double> o3    = toDblList(hourly.path("ozone"));
-            List<Double> uv    = toDblList(hourly.path("uv_index"));
-            List<Double> ch4   = toDblList(hourly.path("methane"));
-
-            int n = times.size();
-            List<AirQualityPointDto> out = new ArrayList<>(n);
-
-            for (int i = 0; i < n; i++) {
-                Instant t = parseUtcInstant(times.get(i));
-                if (t.isBefore(start) || t.isAfter(end)) continue;
-                if (apiNow != null && t.isAfter(apiNow)) continue;
-
-                out.add(new AirQualityPointDto(
-                        t,
-                        pick(pm10, i), pick(pm25, i),
-                        pick(co, i),  pick(co2, i),
-                        pick(no2, i), pick(so2, i),
-                        pick(o3, i),  pick(ch4, i),
-                        pick(uv, i)
-                ));
-            }
-            return out;
+            return OpenMeteoHourly.parse(body, HOURLY_COLUMNS)
+                    .toSeries(HourlySeries.ceilHour(start), lastHour, VARIABLES, OM_COLUMNS);
         } catch (Exception e) {
             throw new RuntimeException("Cannot parse Open-Meteo air-quality response", e);
         }
     }
 
-    public int upsertBatch(String locationId, List<AirQualityPointDto> points) {
-        if (points == null || points.isEmpty()) return 0;
-
-        BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, AirQualityMeasurement.class);
-
-        for (AirQualityPointDto d : points) {
-            Query q = new Query(Criteria.where("locationId").is(locationId)
-                    .and("recordedAt").is(d.time()));
-
-            Update u = new Update()
-                    .setOnInsert("locationId", locationId)
-                    .set("recordedAt", d.time())
-                    .set("pm10", d.pm10())
-                    .set("pm25", d.pm25())
-                    .set("co", d.co())
-                    .set("co2", d.co2())
-                    .set("no2", d.no2())
-                    .set("so2", d.so2())
-                    .set("o3", d.o3())
-                    .set("ch4", d.ch4())
-                    .set("uv", d.uv());
-
-            bulk.upsert(q, u);
+    private String seriesUrl(double lat, double lon, Instant from, Instant to) {
+        Instant start = from.truncatedTo(ChronoUnit.HOURS);
+        Instant end   = ceilToHour(to.truncatedTo(ChronoUnit.MINUTES));
+        return buildUrl(lat, lon, start, end);
+    }
+
+    /**
+     * The last {@code hours} hours of several locations in one multi-coordinate request, bulk-written in one go.
+     * @return the stored rows by location id
+     */
+    public Map<String, HourlySeries> ingest(List<Location> batch, int hours) {
+        if (batch.isEmpty()) return Map.of();
+        StringJoiner lats = new StringJoiner(",");
+        StringJoiner lons = new StringJoiner(",");
+        for (Location l : batch) {
+            lats.add(String.valueOf(l.dataLatitude()));
+            lons.add(String.valueOf(l.dataLongitude()));
+        }
+        String url = API_BASE + "?latitude=" + lats + "&longitude=" + lons
+                + "&hourly=" + HOURLY_PARAMS
+                + "&past_days=" + Math.max(1, (hours + 23) / 24) + "&forecast_days=1"
+                + "&timezone=UTC";
+
+        List<OpenMeteoHourly> parts = OpenMeteoHourly.parseAll(http.getUncached(url), HOURLY_COLUMNS);
+        if (parts.size() != batch.size()) throw new IllegalStateException("Unexpected multi-location response size");
+
+        long now = HourlySeries.epochHour(Instant.now());
+        Map<String, HourlySeries> out = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            HourlySeries s = parts.get(i).toSeries(now - hours + 1, now, VARIABLES, OM_COLUMNS);
+            if (!s.isEmpty()) out.put(batch.get(i).dataKey(), s);
         }
+        upsertAll(out);
+        return out;
+    }
 
-        bulk.execute();
-        return points.size();
+    /** Queues rows for the write-behind buffer; {@code afterFlush}, if not null, runs once they are stored. */
+    private void upsertLater(String locationId, HourlySeries series, Runnable afterFlush) {
+        writeBehind.submit(new MeasurementWriteBehind.Target(MeasurementRollups.Family.AIR_QUALITY,
+                collections.airQualityWrites(), Map.of()), locationId, series, afterFlush);
+    }
+
+    /** Stores rows of several locations right away, with one bulk write per collection. */
+    public int upsertAll(Map<String, HourlySeries> byLocation) {
+        int n = store.writeAll(collections.airQualityWrites(), byLocation, Map.of());
+        byLocation.forEach((locationId, series) -> {
+            rollups.refresh(MeasurementRollups.Family.AIR_QUALITY, locationId, series);
+            versions.bump(MeasurementRollups.Family.AIR_QUALITY, locationId);
+        });
+        return n;
+    }
+
+    private static AirQualityPointDto toPoint(HourlySeries s, int o) {
+        return new AirQualityPointDto(
+                s.instantAt(o),
+                boxed(s.at(PM10, o)), boxed(s.at(PM25, o)),
+                boxed(s.at(CO, o)),   boxed(s.at(CO2, o)),
+                boxed(s.at(NO2, o)),  boxed(s.at(SO2, o)),
+                boxed(s.at(O3, o)),   boxed(s.at(CH4, o)),
+                boxed(s.at(UV, o))
+        );
+    }
+
+    private static AirQualityAveragesDto averages(HourlySeries s) {
+        return new AirQualityAveragesDto(
+                avg(s.column(PM10)), avg(s.column(PM25)),
+                avg(s.column(CO)),   avg(s.column(CO2)),
+                avg(s.column(NO2)),  avg(s.column(SO2)),
+                avg(s.column(O3)),   avg(s.column(CH4)),
+                avg(s.column(UV))
+        );
     }
 
     public AirQualityAveragesDto computeAverages(List<AirQualityPointDto> pts) {
@@ -216,6 +366,11 @@ public class AirQualityService {
         return from != null && to != null && from.isBefore(to);
     }
 
+    private static Instant ceilToHour(Instant t) {
+        Instant h = t.truncatedTo(ChronoUnit.HOURS);
+        return h.equals(t) ? h : h.plus(1, ChronoUnit.HOURS);
+    }
+
     private static String buildUrl(double lat, double lon, Instant from, Instant to) {
         int pastDays = 0;
         LocalDate dFrom = ZonedDateTime.ofInstant(from, ZoneOffset.UTC).toLocalDate();
@@ -234,28 +389,25 @@ public class AirQualityService {
         return sb.toString();
     }
 
-    private static List<String> toStrList(JsonNode arr) {
-        if (arr == null || !arr.isArray()) return List.of();
-        List<String> out = new ArrayList<>(arr.size());
-        arr.forEach(n -> out.add(n.asText()));
-        return out;
+    private static Double mean(BucketStats b, int variable, int bucket) {
+        return boxed(b.value(variable, bucket, Statistic.MEAN));
     }
 
-    private static List<Double> toDblList(JsonNode arr) {
-        if (arr == null || !arr.isArray()) return List.of();
-        List<Double> out = new ArrayList<>(arr.size());
-        arr.forEach(n -> out.add(n.isNull() ? null : n.asDouble()));
-        return out;
+    private static Double mean(RunningBuckets b, int variable) {
+        return boxed(b.value(variable, Statistic.MEAN));
     }
 
-    private static Double pick(List<Double> list, int i) {
-        if (list == null || i < 0 || i >= list.size()) return null;
-        Double v = list.get(i);
-        return (v == null || v.isNaN() || v.isInfinite()) ? null : v;
+    private static Double boxed(double v) {
+        return Double.isNaN(v) ? null : v;
     }
 
-    private static Instant parseUtcInstant(String s) {
-        return LocalDateTime.parse(s, OM_HOURLY).toInstant(ZoneOffset.UTC);
+    private static Double avg(double[] values) {
+        double sum = 0; int n = 0;
+        for (double v : values) {
+            if (!Double.isNaN(v)) { sum += v; n++; }
+        }
+        if (n == 0) return null;
+        return new BigDecimal(sum / n).setScale(1, RoundingMode.HALF_UP).doubleValue();
     }
 
     private static Double avg(List<Double> values) {
@@ -267,38 +419,4 @@ public class AirQualityService {
         if (n == 0) return null;
         return new BigDecimal(sum / n).setScale(1, RoundingMode.HALF_UP).doubleValue();
     }
-
-    private static double latOf(Location loc) {
-        try { return (double) Location.class.getMethod("getLatitude").invoke(loc); }
-        catch (Exception ignore) { /* fallthrough */ }
-        try { return (double) Location.class.getMethod("getLat").invoke(loc); }
-        catch (Exception e) { throw new IllegalStateException("Location must expose getLatitude() or getLat()"); }
-    }
-
-    private static double lonOf(Location loc) {
-        try { return (double) Location.class.getMethod("getLongitude").invoke(loc); }
-        catch (Exception ignore) { /* fallthrough */ }
-        try { return (double) Location.class.getMethod("getLon").invoke(loc); }
-        catch (Exception e) { throw new IllegalStateException("Location must expose getLongitude() or getLon()"); }
-    }
-
-    private static List<AirQualityPointDto> buildContinuousHourlySeries(
-            Map<Instant, AirQualityPointDto> byTime, Instant from, Instant to) {
-
-        List<AirQualityPointDto> out = new ArrayList<>();
-        Instant startH = from.truncatedTo(ChronoUnit.HOURS);
-        Instant endH   = to.truncatedTo(ChronoUnit.HOURS);
-
-        for (Instant t = startH; !t.isAfter(endH); t = t.plus(1, ChronoUnit.HOURS)) {
-            AirQualityPointDto p = byTime.get(t);
-            if (p != null) {
-                out.add(p);
-            } else {
-                out.add(new AirQualityPointDto(
-                        t, null, null, null, null, null, null, null, null, null
-                ));
-            }
-        }
-        return out;
-    }
 }
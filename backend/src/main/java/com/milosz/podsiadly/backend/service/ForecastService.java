@@ -5,20 +5,43 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.milosz.podsiadly.backend.dto.CitySnapshotDto;
 import com.milosz.podsiadly.backend.dto.DailySeriesDto;
 import com.milosz.podsiadly.backend.dto.PlSnapshotResponseDto;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoClient;
+import com.milosz.podsiadly.backend.upstream.UpstreamPriority;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class ForecastService {
 
-    private final RestClient http;
+    private static final String DAILY_FIELDS = "temperature_2m_max,precipitation_probability_max";
+    private static final int SNAPSHOT_DAYS = 7;
+
+    private final OpenMeteoClient http;
     private final ObjectMapper om = new ObjectMapper();
+    private final ExecutorService snapshotPool;
+    private final Duration snapshotTimeout;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
 
-    public ForecastService(RestClient http) {
+    public ForecastService(OpenMeteoClient http,
+                           @Value("${app.forecast.snapshot.parallelism:8}") int snapshotParallelism,
+                           @Value("${app.forecast.snapshot.timeout:PT10S}") Duration snapshotTimeout) {
         this.http = http;
+        this.snapshotPool = Executors.newFixedThreadPool(Math.max(1, snapshotParallelism), daemonThreads("pl-snapshot-"));
+        this.snapshotTimeout = snapshotTimeout;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        snapshotPool.shutdownNow();
     }
 
     public DailySeriesDto daily(double lat, double lon, int days) {
@@ -27,48 +50,156 @@ public class ForecastService {
                 + "?latitude=" + lat
                 + "&longitude=" + lon
                 + "&forecast_days=" + d
-                + "&daily=temperature_2m_max,precipitation_probability_max"
+                + "&daily=" + DAILY_FIELDS
                 + "&timezone=UTC";
 
-        String body = http.get().uri(url).retrieve().body(String.class);
+        String body = http.get(url);
         try {
-            JsonNode root = om.readTree(body).path("daily");
-            List<String> dates = toStrList(root.path("time"));
-            List<Double> tmax = toDblList(root.path("temperature_2m_max"));
-            List<Integer> pop = toIntList(root.path("precipitation_probability_max"));
-            return new DailySeriesDto(dates, tmax, pop);
+            return parseDaily(om.readTree(body));
         } catch (Exception e) {
             throw new RuntimeException("Cannot parse Open-Meteo daily", e);
         }
     }
 
+    /**
+     * Served from the in-memory snapshot kept fresh by {@link #refreshSnapshot()}.
+     * Only the very first call after startup may block on upstream, if it wins
+     * the race against the scheduler.
+     */
     public PlSnapshotResponseDto polandSnapshot(String range) {
-        Range r = Range.from(range);
+        Snapshot s = snapshot.get();
+        if (s == null) s = refreshIfEmpty();
+        return s.byRange().get(Range.from(range));
+    }
+
+    @Scheduled(fixedDelayString = "${app.forecast.snapshot.refresh-interval:PT15M}")
+    public void refreshSnapshot() {
+        Snapshot next = UpstreamPriority.PREFETCH.call(this::buildSnapshot);
+        if (next.loaded() == 0 && snapshot.get() != null) return;
+        snapshot.set(next);
+    }
 
+    private synchronized Snapshot refreshIfEmpty() {
+        Snapshot s = snapshot.get();
+        if (s == null) {
+            s = buildSnapshot();
+            snapshot.set(s);
+        }
+        return s;
+    }
+
+    private Snapshot buildSnapshot() {
         List<City> cities = City.ALL;
-        List<CitySnapshotDto> out = new ArrayList<>(cities.size());
+        List<DailySeriesDto> series;
+        try {
+            series = dailyBatch(cities);
+        } catch (Exception e) {
+            series = dailyFanOut(cities);
+        }
+
+        int loaded = (int) series.stream().filter(Objects::nonNull).count();
+        Instant generatedAt = Instant.now();
+        Map<Range, PlSnapshotResponseDto> byRange = new EnumMap<>(Range.class);
+        for (Range r : Range.values()) {
+            List<CitySnapshotDto> out = new ArrayList<>(cities.size());
+            for (int i = 0; i < cities.size(); i++) {
+                out.add(citySnapshot(cities.get(i), series.get(i), r));
+            }
+            byRange.put(r, new PlSnapshotResponseDto(r.key, generatedAt, List.copyOf(out)));
+        }
+        return new Snapshot(loaded, byRange);
+    }
 
+    /** One multi-coordinate request; Open-Meteo answers with an array in coordinate order. */
+    private List<DailySeriesDto> dailyBatch(List<City> cities) throws Exception {
+        StringJoiner lats = new StringJoiner(",");
+        StringJoiner lons = new StringJoiner(",");
         for (City c : cities) {
-            DailySeriesDto s = daily(c.lat, c.lon, 7);
-            Double t = null;
-            Integer p = null;
-
-            if (!s.dates().isEmpty()) {
-                switch (r) {
-                    case TODAY, TOMORROW, PLUS2 -> {
-                        int idx = Math.min(r.offset, s.dates().size() - 1);
-                        t = pickDouble(s.tmax(), idx);
-                        p = pickInt(s.pop(), idx);
-                    }
-                    case WEEK -> {
-                        t = avg(s.tmax());
-                        p = max(s.pop());
-                    }
+            lats.add(String.valueOf(c.lat));
+            lons.add(String.valueOf(c.lon));
+        }
+        String url = "https://api.open-meteo.com/v1/forecast"
+                + "?latitude=" + lats
+                + "&longitude=" + lons
+                + "&forecast_days=" + SNAPSHOT_DAYS
+                + "&daily=" + DAILY_FIELDS
+                + "&timezone=UTC";
+
+        String body = http.getUncached(url);
+        JsonNode root = om.readTree(body);
+        if (!root.isArray() || root.size() != cities.size()) {
+            throw new IllegalStateException("Unexpected multi-location response size");
+        }
+        List<DailySeriesDto> out = new ArrayList<>(cities.size());
+        for (JsonNode n : root) out.add(parseDaily(n));
+        return out;
+    }
+
+    /** Fallback when the batch request fails: one call per city, bounded and under a deadline. */
+    private List<DailySeriesDto> dailyFanOut(List<City> cities) {
+        List<Future<DailySeriesDto>> pending = new ArrayList<>(cities.size());
+        UpstreamPriority priority = UpstreamPriority.current();
+        for (City c : cities) {
+            pending.add(snapshotPool.submit(() -> priority.call(() -> daily(c.lat, c.lon, SNAPSHOT_DAYS))));
+        }
+
+        long deadline = System.nanoTime() + snapshotTimeout.toNanos();
+        List<DailySeriesDto> out = new ArrayList<>(cities.size());
+        for (Future<DailySeriesDto> f : pending) out.add(await(f, deadline));
+        return out;
+    }
+
+    private static CitySnapshotDto citySnapshot(City c, DailySeriesDto s, Range r) {
+        Double t = null;
+        Integer p = null;
+
+        if (s != null && !s.dates().isEmpty()) {
+            switch (r) {
+                case TODAY, TOMORROW, PLUS2 -> {
+                    int idx = Math.min(r.offset, s.dates().size() - 1);
+                    t = pickDouble(s.tmax(), idx);
+                    p = pickInt(s.pop(), idx);
+                }
+                case WEEK -> {
+                    t = avg(s.tmax());
+                    p = max(s.pop());
                 }
             }
-            out.add(new CitySnapshotDto(c.id, c.name, c.lat, c.lon, t, p));
         }
-        return new PlSnapshotResponseDto(r.key, Instant.now(), out);
+        return new CitySnapshotDto(c.id, c.name, c.lat, c.lon, t, p);
+    }
+
+    private static DailySeriesDto parseDaily(JsonNode location) {
+        JsonNode root = location.path("daily");
+        List<String> dates = toStrList(root.path("time"));
+        List<Double> tmax = toDblList(root.path("temperature_2m_max"));
+        List<Integer> pop = toIntList(root.path("precipitation_probability_max"));
+        return new DailySeriesDto(dates, tmax, pop);
+    }
+
+    private record Snapshot(int loaded, Map<Range, PlSnapshotResponseDto> byRange) {}
+
+    private static <T> T await(Future<T> f, long deadlineNanos) {
+        try {
+            long left = Math.max(0, deadlineNanos - System.nanoTime());
+            return f.get(left, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            f.cancel(true);
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            f.cancel(true);
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
     }
 
     private static Double pickDouble(List<Double> list, int i) {
@@ -0,0 +1,85 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.entity.Location;
+import com.milosz.podsiadly.backend.repository.LocationRepository;
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import com.milosz.podsiadly.backend.upstream.UpstreamPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps current weather and air quality of the locations in {@link HotLocations} stored ahead of
+ * requests: on every tick the hottest ones are fetched in multi-coordinate batches (one upstream
+ * call per family and batch) and written with one bulk upsert. A failed batch is skipped until
+ * the next tick; the read paths fetch on their own while a location is not fresh.
+ */
+@Component
+@ConditionalOnProperty(name = "app.ingestion.enabled", havingValue = "true", matchIfMissing = true)
+public class HotLocationIngestion {
+
+    /** Hours of air quality per tick, so a missed tick still leaves no gap. */
+    private static final int AIR_QUALITY_HOURS = 24;
+
+    private final HotLocations hot;
+    private final LocationRepository locations;
+    private final WeatherService weather;
+    private final AirQualityService airQuality;
+    private final double minScore;
+    private final int maxLocations;
+    private final int batchSize;
+    private final Counter ingested;
+    private final Counter failed;
+
+    public HotLocationIngestion(HotLocations hot, LocationRepository locations,
+                                WeatherService weather, AirQualityService airQuality, MeterRegistry meters,
+                                @Value("${app.ingestion.min-score:0.5}") double minScore,
+                                @Value("${app.ingestion.max-locations:200}") int maxLocations,
+                                @Value("${app.ingestion.batch-size:50}") int batchSize) {
+        this.hot = hot;
+        this.locations = locations;
+        this.weather = weather;
+        this.airQuality = airQuality;
+        this.minScore = minScore;
+        this.maxLocations = maxLocations;
+        this.batchSize = Math.max(1, batchSize);
+        this.ingested = meters.counter("ingestion.locations");
+        this.failed = meters.counter("ingestion.batches.failed");
+    }
+
+    @Scheduled(fixedDelayString = "${app.ingestion.interval:PT15M}", initialDelayString = "PT1M")
+    public void ingestHot() {
+        List<String> ids = hot.hottest(maxLocations, minScore);
+        if (ids.isEmpty()) return;
+
+        List<Location> batch = new ArrayList<>(batchSize);
+        for (Location l : locations.findAllById(ids)) {
+            if (l.dataLatitude() == null || l.dataLongitude() == null) continue;
+            batch.add(l);
+            if (batch.size() == batchSize) {
+                UpstreamPriority.PREFETCH.run(() -> ingest(List.copyOf(batch)));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) UpstreamPriority.PREFETCH.run(() -> ingest(batch));
+    }
+
+    private void ingest(List<Location> batch) {
+        try {
+            Map<String, HourlySeries> aq = airQuality.ingest(batch, AIR_QUALITY_HOURS);
+            for (String id : weather.ingestCurrent(batch, aq)) {
+                hot.markIngested(id);
+                ingested.increment();
+            }
+        } catch (RuntimeException e) {
+            failed.increment();
+        }
+    }
+}
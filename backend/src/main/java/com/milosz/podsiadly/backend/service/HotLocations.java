@@ -0,0 +1,80 @@
+package com.milosz.podsiadly.backend.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which locations users are looking at: every view adds one to a score that halves every
+ * {@code half-life}, so a location stays hot while it keeps being requested and fades out
+ * otherwise. Also remembers when each location was last ingested in the background, which
+ * lets the read paths skip upstream while that data is fresh.
+ */
+@Component
+public class HotLocations {
+
+    private record Score(double value, long atMs) {
+        double at(long nowMs, double halfLifeMs) {
+            return value * Math.pow(0.5, (nowMs - atMs) / halfLifeMs);
+        }
+    }
+
+    /** Scores below this are forgotten when the hot list is taken. */
+    private static final double FORGET_BELOW = 0.01;
+
+    private final Map<String, Score> scores = new ConcurrentHashMap<>();
+    private final Map<String, Long> ingestedAt = new ConcurrentHashMap<>();
+    private final double halfLifeMs;
+    private final long freshForMs;
+
+    public HotLocations(MeterRegistry meters,
+                        @Value("${app.ingestion.half-life:PT6H}") Duration halfLife,
+                        @Value("${app.ingestion.fresh-for:PT20M}") Duration freshFor) {
+        this.halfLifeMs = halfLife.toMillis();
+        this.freshForMs = freshFor.toMillis();
+        Gauge.builder("ingestion.tracked.locations", scores, Map::size).register(meters);
+    }
+
+    public void touch(String locationId) {
+        long now = System.currentTimeMillis();
+        scores.merge(locationId, new Score(1, now),
+                (old, one) -> new Score(old.at(now, halfLifeMs) + 1, now));
+    }
+
+    /** Current score of the location, 0 when it has not been viewed lately. */
+    public double score(String locationId) {
+        Score s = scores.get(locationId);
+        return s == null ? 0 : s.at(System.currentTimeMillis(), halfLifeMs);
+    }
+
+    /** Up to {@code limit} location ids with a score of at least {@code minScore}, hottest first. */
+    public List<String> hottest(int limit, double minScore) {
+        long now = System.currentTimeMillis();
+        scores.entrySet().removeIf(e -> e.getValue().at(now, halfLifeMs) < FORGET_BELOW);
+        ingestedAt.keySet().retainAll(scores.keySet());
+        return scores.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().at(now, halfLifeMs)))
+                .filter(e -> e.getValue() >= minScore)
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    public void markIngested(String locationId) {
+        ingestedAt.put(locationId, System.currentTimeMillis());
+    }
+
+    /** Whether background ingestion stored current data for the location within {@code fresh-for}. */
+    public boolean isFresh(String locationId) {
+        Long at = ingestedAt.get(locationId);
+        return at != null && System.currentTimeMillis() - at <= freshForMs;
+    }
+}
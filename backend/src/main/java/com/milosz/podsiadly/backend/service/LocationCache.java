@@ -0,0 +1,104 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.entity.Location;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU of locations by id for the request path, filled by {@link LocationService#require}.
+ * Saves and deletes made through this process replace or drop the entry at once; the TTL bounds
+ * how long a change made elsewhere can go unseen. A hit allocates nothing.
+ */
+@Component
+public class LocationCache extends AbstractMongoEventListener<Location> {
+
+    private record Entry(Location location, long expiresAtNanos) {}
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Counter hits;
+    private final Counter misses;
+
+    public LocationCache(MeterRegistry meters,
+                         @Value("${app.locations.cache.max-entries:10000}") int maxEntries,
+                         @Value("${app.locations.cache.ttl:PT10M}") Duration ttl) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = ttl.toNanos();
+        this.hits = meters.counter("locations.cache.hits");
+        this.misses = meters.counter("locations.cache.misses");
+        Gauge.builder("locations.cache.entries", this, LocationCache::size).register(meters);
+        Gauge.builder("locations.cache.hit.ratio", this, LocationCache::hitRatio).register(meters);
+    }
+
+    /** The cached location, or null on a miss; the caller loads it and {@link #put}s it. */
+    public Location get(String id) {
+        Location found = null;
+        synchronized (this) {
+            Entry e = entries.get(id);
+            if (e != null) {
+                if (e.expiresAtNanos() - System.nanoTime() > 0) found = e.location();
+                else entries.remove(id);
+            }
+        }
+        (found == null ? misses : hits).increment();
+        return found;
+    }
+
+    public synchronized void put(Location l) {
+        if (l.getId() == null) return;
+        entries.put(l.getId(), new Entry(l, System.nanoTime() + ttlNanos));
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    public synchronized void invalidate(String id) {
+        entries.remove(id);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private double hitRatio() {
+        double h = hits.count(), total = h + misses.count();
+        return total == 0 ? 0 : h / total;
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Location> event) {
+        Location saved = event.getSource();
+        if (saved.getId() == null) return;
+        synchronized (this) {
+            // Only refresh what is cached; a save must not push hot entries out.
+            if (entries.containsKey(saved.getId())) put(saved);
+        }
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Location> event) {
+        Object id = event.getSource().get("_id");
+        if (id instanceof Document) clear();
+        else if (id != null) invalidate(id.toString());
+    }
+
+    /** Deletes by query do not say which ids went. */
+    private synchronized void clear() {
+        entries.clear();
+    }
+}
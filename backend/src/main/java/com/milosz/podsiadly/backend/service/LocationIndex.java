@@ -0,0 +1,171 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.entity.Location;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory search-as-you-type index over the stored locations. Every word start of a name is a
+ * prefix key, so "mazo" finds "Nowy Dwór Mazowiecki"; names are folded to lower-case ASCII, so
+ * "lodz" finds "Łódź". Queries without a prefix match fall back to trigram similarity, which
+ * absorbs a typo or two. Ties are broken by {@link HotLocations} popularity, then by name length.
+ * Filled by {@link LocationIndexLoader} and kept current from Mongo save and delete events.
+ */
+@Component
+public class LocationIndex extends AbstractMongoEventListener<Location> {
+
+    /** Candidates looked at per prefix query, so one-letter queries stay cheap. */
+    private static final int MAX_PREFIX_CANDIDATES = 512;
+    /** Dice coefficient of trigram sets a fuzzy match needs. */
+    private static final double MIN_SIMILARITY = 0.5;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9]+");
+
+    private record Entry(Location location, String name, Set<String> grams) {}
+
+    private final HotLocations popularity;
+    private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+    /** {@code word-start suffix of the folded name + '\0' + id}, so equal names do not collide. */
+    private final ConcurrentSkipListMap<String, String> prefixes = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> trigrams = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public LocationIndex(HotLocations popularity, MeterRegistry meters) {
+        this.popularity = popularity;
+        Gauge.builder("locations.index.size", byId, Map::size).register(meters);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Adds every location; the index answers queries from then on. */
+    public void load(Iterable<Location> all) {
+        for (Location l : all) put(l);
+        loaded = true;
+    }
+
+    /**
+     * Up to {@code limit} stored locations matching {@code query}: word-prefix matches if there are
+     * any, otherwise names with a similar spelling. Empty when nothing is close.
+     */
+    public List<Location> search(String query, int limit) {
+        String q = fold(query);
+        if (q.isEmpty() || limit <= 0) return List.of();
+
+        Map<String, Integer> tier = new HashMap<>();
+        int seen = 0;
+        for (var e : prefixes.subMap(q, q + Character.MAX_VALUE).entrySet()) {
+            Entry hit = byId.get(e.getValue());
+            if (hit == null) continue;
+            int t = hit.name().equals(q) ? 0 : hit.name().startsWith(q) ? 1 : 2;
+            tier.merge(e.getValue(), t, Math::min);
+            if (++seen >= MAX_PREFIX_CANDIDATES) break;
+        }
+        if (!tier.isEmpty()) return ranked(tier, Map.of(), limit);
+        if (q.length() < MIN_FUZZY_LENGTH) return List.of();
+
+        Set<String> grams = grams(q);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String g : grams) {
+            Set<String> ids = trigrams.get(g);
+            if (ids != null) ids.forEach(id -> shared.merge(id, 1, Integer::sum));
+        }
+        Map<String, Double> similarity = new HashMap<>();
+        shared.forEach((id, n) -> {
+            Entry hit = byId.get(id);
+            if (hit == null) return;
+            double dice = 2.0 * n / (grams.size() + hit.grams().size());
+            if (dice >= MIN_SIMILARITY) {
+                similarity.put(id, dice);
+                tier.put(id, 3);
+            }
+        });
+        return ranked(tier, similarity, limit);
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Location> event) {
+        if (event.getSource().getId() != null) put(event.getSource());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Location> event) {
+        Object id = event.getSource().get("_id");
+        if (id != null && !(id instanceof Document)) remove(id.toString());
+    }
+
+    public void put(Location l) {
+        if (l.getId() == null || l.getName() == null) return;
+        remove(l.getId());
+        String name = fold(l.getName());
+        Entry e = new Entry(l, name, grams(name));
+        byId.put(l.getId(), e);
+        for (String key : wordStarts(name)) prefixes.put(key + '\0' + l.getId(), l.getId());
+        for (String g : e.grams()) trigrams.computeIfAbsent(g, k -> ConcurrentHashMap.newKeySet()).add(l.getId());
+    }
+
+    public void remove(String id) {
+        Entry old = byId.remove(id);
+        if (old == null) return;
+        for (String key : wordStarts(old.name())) prefixes.remove(key + '\0' + id);
+        for (String g : old.grams()) {
+            Set<String> ids = trigrams.get(g);
+            if (ids != null) ids.remove(id);
+        }
+    }
+
+    private List<Location> ranked(Map<String, Integer> tier, Map<String, Double> similarity, int limit) {
+        Map<String, Entry> hits = new HashMap<>();
+        Map<String, Double> score = new HashMap<>();
+        tier.keySet().forEach(id -> {
+            Entry e = byId.get(id);
+            if (e == null) return;
+            hits.put(id, e);
+            score.put(id, popularity.score(e.location().dataKey()));
+        });
+        return hits.keySet().stream()
+                .sorted(Comparator.<String>comparingInt(tier::get)
+                        .thenComparing(id -> -similarity.getOrDefault(id, 0.0))
+                        .thenComparing(id -> -score.get(id))
+                        .thenComparingInt(id -> hits.get(id).name().length()))
+                .limit(limit)
+                .map(id -> hits.get(id).location())
+                .toList();
+    }
+
+    /** The folded name and each suffix of it that starts a word. */
+    private static List<String> wordStarts(String name) {
+        List<String> out = new ArrayList<>();
+        out.add(name);
+        for (int i = name.indexOf(' '); i >= 0; i = name.indexOf(' ', i + 1)) out.add(name.substring(i + 1));
+        return out;
+    }
+
+    private static Set<String> grams(String name) {
+        String padded = "  " + name + " ";
+        Set<String> out = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) out.add(padded.substring(i, i + 3));
+        return out;
+    }
+
+    /** Lower-case ASCII words separated by single spaces; Polish {@code ł} has no decomposition and is mapped by hand. */
+    static String fold(String s) {
+        if (s == null) return "";
+        String lower = s.toLowerCase(Locale.ROOT).replace('ł', 'l');
+        String ascii = MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return NON_WORD.matcher(ascii).replaceAll(" ").trim();
+    }
+}
@@ -0,0 +1,26 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.repository.LocationRepository;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/** Fills {@link LocationIndex} from the {@code locations} collection at startup; saves made meanwhile are indexed as they happen. */
+@Component
+@ConditionalOnProperty(name = "app.locations.index.preload", havingValue = "true", matchIfMissing = true)
+public class LocationIndexLoader implements ApplicationRunner {
+
+    private final LocationRepository locations;
+    private final LocationIndex index;
+
+    public LocationIndexLoader(LocationRepository locations, LocationIndex index) {
+        this.locations = locations;
+        this.index = index;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        index.load(locations.findAll());
+    }
+}
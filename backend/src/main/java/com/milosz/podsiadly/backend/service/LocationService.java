@@ -6,43 +6,92 @@ import com.milosz.podsiadly.backend.dto.LocationDto;
 import com.milosz.podsiadly.backend.entity.Location;
 import com.milosz.podsiadly.backend.mapper.LocationMapper;
 import com.milosz.podsiadly.backend.repository.LocationRepository;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoClient;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClient;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class LocationService {
-    private final RestClient http;
+    private final OpenMeteoClient http;
     private final ObjectMapper om = new ObjectMapper();
     private final LocationRepository repo;
     private final LocationMapper mapper;
+    private final LocationIndex index;
+    private final LocationCache cache;
+    private final MongoTemplate mongo;
+    private final double snapRadiusMeters;
+    private final double gridDegrees;
 
-    public LocationService(RestClient http, LocationRepository repo, LocationMapper mapper) {
-        this.http = http; this.repo = repo; this.mapper = mapper;
+    public LocationService(OpenMeteoClient http, LocationRepository repo, LocationMapper mapper, LocationIndex index,
+                           LocationCache cache, MongoTemplate mongo,
+                           @Value("${app.locations.snap-radius-meters:1500}") double snapRadiusMeters,
+                           @Value("${app.locations.grid-degrees:0.02}") double gridDegrees) {
+        this.http = http; this.repo = repo; this.mapper = mapper; this.index = index;
+        this.cache = cache; this.mongo = mongo; this.snapRadiusMeters = snapRadiusMeters;
+        this.gridDegrees = gridDegrees;
     }
 
+    /**
+     * Locations matching {@code query}. A stored location with exactly that (folded) name answers on
+     * its own; otherwise the geocoding API is asked too, what it finds is stored for next time and
+     * listed first, followed by the stored near matches (prefix or near spelling, see {@link LocationIndex}).
+     */
     public List<LocationDto> search(String query, int count) {
-        var cached = repo.findByNameIgnoreCase(query);
-        var out = new ArrayList<LocationDto>();
-        cached.forEach(l -> out.add(mapper.toDto(l)));
-        if (!out.isEmpty()) return out;
+        // Until the index is loaded, fall back to exact names.
+        var stored = index.isLoaded() ? index.search(query, count) : repo.findByNameIgnoreCase(query);
+        String name = LocationIndex.fold(query);
+        if (stored.stream().anyMatch(l -> LocationIndex.fold(l.getName()).equals(name))) {
+            return stored.stream().map(mapper::toDto).toList();
+        }
 
+        Map<String, LocationDto> out = new LinkedHashMap<>();
+        try {
+            geocode(query, count).forEach(d -> out.putIfAbsent(d.id(), d));
+        } catch (RuntimeException e) {
+            // Near matches are still worth showing while geocoding is unavailable.
+            if (stored.isEmpty()) throw e;
+        }
+        stored.forEach(l -> out.putIfAbsent(l.getId(), mapper.toDto(l)));
+        return out.values().stream().limit(count).toList();
+    }
+
+    /** Asks the geocoding API and stores what it finds that is not stored already. */
+    private List<LocationDto> geocode(String query, int count) {
+        var out = new ArrayList<LocationDto>();
         String url = "https://geocoding-api.open-meteo.com/v1/search?name=" + query +
                 "&count=" + count + "&language=pl&format=json";
-        String body = http.get().uri(url).retrieve().body(String.class);
+        String body = http.get(url);
         try {
             JsonNode root = om.readTree(body).path("results");
             if (root.isMissingNode()) return List.of();
             for (JsonNode n : root) {
+                double lat = n.path("latitude").asDouble(), lon = n.path("longitude").asDouble();
                 Location l = Location.builder()
                         .name(n.path("name").asText())
                         .admin(n.path("admin1").asText(null))
                         .country(n.path("country_code").asText())
-                        .latitude(n.path("latitude").asDouble())
-                        .longitude(n.path("longitude").asDouble())
+                        .latitude(lat)
+                        .longitude(lon)
+                        .position(new GeoJsonPoint(lon, lat))
                         .build();
+                // A second copy of a place already stored nearby is not stored at all; anything else
+                // shares the measurements of its grid cell with every other place in it.
+                Optional<Location> near = nearest(lat, lon, snapRadiusMeters);
+                if (near.isPresent() && LocationIndex.fold(near.get().getName()).equals(LocationIndex.fold(l.getName()))) {
+                    out.add(mapper.toDto(near.get()));
+                    continue;
+                }
+                l.snapToGrid(gridDegrees);
                 repo.save(l);
                 out.add(mapper.toDto(l));
             }
@@ -52,8 +101,32 @@ public class LocationService {
         }
     }
 
+    /** The stored location closest to the point, if one lies within {@code maxMeters}. */
+    public Optional<Location> nearest(double lat, double lon, double maxMeters) {
+        Document near = new Document("$geometry", new Document("type", "Point").append("coordinates", List.of(lon, lat)))
+                .append("$maxDistance", maxMeters);
+        return Optional.ofNullable(mongo.findOne(new BasicQuery(new Document("position", new Document("$near", near))),
+                Location.class));
+    }
+
+    /** Key the location's measurements are stored under; unknown ids are returned unchanged. */
+    public String dataKey(String locationId) {
+        Location l = find(locationId);
+        return l != null ? l.dataKey() : locationId;
+    }
+
     public Location require(String locationId) {
-        return repo.findById(locationId)
-                .orElseThrow(() -> new IllegalArgumentException("Location not found: " + locationId));
+        Location l = find(locationId);
+        if (l == null) throw new IllegalArgumentException("Location not found: " + locationId);
+        return l;
+    }
+
+    /** Read-through {@link LocationCache}; unknown ids are not cached and go to Mongo every time. */
+    private Location find(String locationId) {
+        Location l = cache.get(locationId);
+        if (l != null) return l;
+        l = repo.findById(locationId).orElse(null);
+        if (l != null) cache.put(l);
+        return l;
     }
 }
\ No newline at end of file
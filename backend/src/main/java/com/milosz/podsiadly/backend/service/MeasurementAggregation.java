@@ -0,0 +1,194 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.config.MeasurementCollections;
+import com.milosz.podsiadly.backend.series.BucketStats;
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import com.milosz.podsiadly.backend.series.Interval;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Interval bucketing done by MongoDB: {@code $match} on location and time, {@code $group}
+ * on the bucket start, {@code $sort}. Only per-bucket count/sum/min/max of each variable
+ * come back, so a year at {@code 1d} moves 365 rows instead of 8760.
+ * <p>
+ * Bucket keys are computed with plain arithmetic rather than {@code $dateTrunc}, whose
+ * {@code binSize} counts from 2000-01-01 and would not line up with {@link Interval} for widths
+ * like {@code 7d} or {@code 5mo}; the results are merged with JVM-side buckets, so edges must match.
+ * <p>
+ * Reads of time-series collections first keep one row per {@code (locationId, recordedAt)}, as
+ * those collections cannot rule out a duplicated hour (see {@link MeasurementCollections}).
+ */
+@Service
+public class MeasurementAggregation {
+
+    private final MongoTemplate mongo;
+    private final MeasurementCollections collections;
+
+    public MeasurementAggregation(MongoTemplate mongo, MeasurementCollections collections) {
+        this.mongo = mongo;
+        this.collections = collections;
+    }
+
+    /**
+     * Stored rows of {@code entity} for {@code locationId} in {@code [from, to]}, bucketed by {@code interval}.
+     * Hours present in {@code skip} are left out; the caller aggregates those itself.
+     */
+    public BucketStats aggregate(Class<?> entity, String[] variables, String locationId,
+                                 Instant from, Instant to, Interval interval, HourlySeries skip) {
+        Criteria where = Criteria.where("recordedAt").gte(from).lte(to);
+        return aggregateRaw(entity, variables, locationId, List.of(where), interval, skip);
+    }
+
+    /** As above over several {@code recordedAt} ranges, given as {@code [fromHour, toHour]} pairs. */
+    public BucketStats aggregate(Class<?> entity, String[] variables, String locationId,
+                                 List<long[]> hourRanges, Interval interval, HourlySeries skip) {
+        if (hourRanges.isEmpty()) return BucketStats.empty(variables, 0);
+        List<Criteria> ranges = new ArrayList<>(hourRanges.size());
+        for (long[] r : hourRanges) ranges.add(hourRange("recordedAt", r[0], r[1]));
+        return aggregateRaw(entity, variables, locationId, ranges, interval, skip);
+    }
+
+    /**
+     * Re-buckets pre-aggregated rows ({@code start}, {@code n_*}, {@code s_*}, {@code lo_*}, {@code hi_*})
+     * of a rollup collection whose {@code start} lies in one of {@code hourRanges}.
+     */
+    public BucketStats aggregateRollup(String collection, String[] variables, String locationId,
+                                       List<long[]> hourRanges, Interval interval) {
+        if (hourRanges.isEmpty()) return BucketStats.empty(variables, 0);
+        List<Criteria> ranges = new ArrayList<>(hourRanges.size());
+        for (long[] r : hourRanges) ranges.add(hourRange("start", r[0], r[1]));
+
+        Criteria where = Criteria.where("locationId").is(locationId).orOperator(ranges);
+        Aggregation agg = newAggregation(
+                match(where),
+                ctx -> new Document("$group", rolledAccumulators(variables, bucketKey(interval, "$start"))),
+                sort(Sort.Direction.ASC, "_id")
+        );
+        return toBuckets(mongo.aggregate(agg, collection, Document.class).getMappedResults(), variables, interval);
+    }
+
+    private BucketStats aggregateRaw(Class<?> entity, String[] variables, String locationId,
+                                     List<Criteria> ranges, Interval interval, HourlySeries skip) {
+        List<Criteria> parts = new ArrayList<>();
+        parts.add(Criteria.where("locationId").is(locationId));
+        parts.add(ranges.size() == 1 ? ranges.get(0) : new Criteria().orOperator(ranges));
+        List<Criteria> excluded = presentRuns(skip);
+        if (!excluded.isEmpty()) parts.add(new Criteria().norOperator(excluded));
+
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(match(new Criteria().andOperator(parts)));
+        stages.addAll(distinctHours(variables));
+        stages.add(ctx -> new Document("$group", rawAccumulators(variables, bucketKey(interval, "$recordedAt"))));
+        stages.add(sort(Sort.Direction.ASC, "_id"));
+        Aggregation agg = newAggregation(stages)
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        return toBuckets(mongo.aggregate(agg, entity, Document.class).getMappedResults(), variables, interval);
+    }
+
+    /**
+     * Stages that collapse rows of one location and hour into one, placed between the {@code $match}
+     * and the bucket {@code $group} over raw rows. None when reads use the regular collections, whose
+     * unique index already guarantees it.
+     */
+    List<AggregationOperation> distinctHours(String[] variables) {
+        if (!collections.readsTimeSeries()) return List.of();
+        Document group = new Document("_id", new Document("l", "$locationId").append("t", "$recordedAt"));
+        for (String v : variables) group.append(v, new Document("$first", "$" + v));
+        return List.of(
+                ctx -> new Document("$group", group),
+                ctx -> new Document("$set", new Document("locationId", "$_id.l").append("recordedAt", "$_id.t")));
+    }
+
+    /** {@code $group} body with count/sum/min/max of each variable over raw hourly rows. */
+    static Document rawAccumulators(String[] variables, Object key) {
+        Document group = new Document("_id", key);
+        for (String v : variables) {
+            String f = "$" + v;
+            group.append("n_" + v, new Document("$sum", new Document("$cond",
+                    List.of(new Document("$isNumber", f), 1, 0))));
+            group.append("s_" + v, new Document("$sum", f));
+            group.append("lo_" + v, new Document("$min", f));
+            group.append("hi_" + v, new Document("$max", f));
+        }
+        return group;
+    }
+
+    /** {@code $group} body combining rows that already carry the {@link #rawAccumulators} fields. */
+    static Document rolledAccumulators(String[] variables, Object key) {
+        Document group = new Document("_id", key);
+        for (String v : variables) {
+            group.append("n_" + v, new Document("$sum", "$n_" + v));
+            group.append("s_" + v, new Document("$sum", "$s_" + v));
+            group.append("lo_" + v, new Document("$min", "$lo_" + v));
+            group.append("hi_" + v, new Document("$max", "$hi_" + v));
+        }
+        return group;
+    }
+
+    /**
+     * Fixed widths: bucket start in epoch millis, {@code ms - (ms - origin) mod width}.
+     * Calendar widths: month index ({@code year * 12 + month - 1}) floored to a multiple of the month count.
+     */
+    private static Object bucketKey(Interval interval, String field) {
+        if (interval.isCalendar()) {
+            Document index = new Document("$add", List.of(
+                    new Document("$multiply", List.of(new Document("$year", field), 12)),
+                    new Document("$subtract", List.of(new Document("$month", field), 1))));
+            return new Document("$subtract", List.of(index,
+                    new Document("$mod", List.of(index, (long) interval.months()))));
+        }
+        Document ms = new Document("$toLong", field);
+        long width = interval.seconds() * 1000;
+        long origin = interval.origin() * 1000;
+        return new Document("$subtract", List.of(ms,
+                new Document("$mod", List.of(new Document("$subtract", List.of(ms, origin)), width))));
+    }
+
+    private static BucketStats toBuckets(List<Document> rows, String[] variables, Interval interval) {
+        BucketStats out = BucketStats.empty(variables, rows.size());
+        for (Document r : rows) {
+            long key = ((Number) r.get("_id")).longValue();
+            int b = out.append(interval.isCalendar() ? Interval.monthStart(key) : key / 1000);
+            for (int v = 0; v < variables.length; v++) {
+                String name = variables[v];
+                int n = ((Number) r.get("n_" + name)).intValue();
+                if (n == 0) continue;
+                out.accumulate(v, b, n,
+                        ((Number) r.get("s_" + name)).doubleValue(),
+                        ((Number) r.get("lo_" + name)).doubleValue(),
+                        ((Number) r.get("hi_" + name)).doubleValue());
+            }
+        }
+        return out;
+    }
+
+    private static Criteria hourRange(String field, long fromHour, long toHour) {
+        return Criteria.where(field).gte(HourlySeries.toInstant(fromHour)).lte(HourlySeries.toInstant(toHour));
+    }
+
+    /** One {@code recordedAt} range per contiguous run of rows in {@code s}. */
+    static List<Criteria> presentRuns(HourlySeries s) {
+        List<Criteria> out = new ArrayList<>();
+        if (s == null) return out;
+        for (int o = s.nextPresent(0); o >= 0; ) {
+            int end = s.nextAbsent(o) - 1;
+            out.add(hourRange("recordedAt", s.startHour() + o, s.startHour() + end));
+            o = s.nextPresent(end + 1);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,207 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.config.MeasurementCollections;
+import com.milosz.podsiadly.backend.entity.AirQualityMeasurement;
+import com.milosz.podsiadly.backend.entity.WeatherMeasurement;
+import com.milosz.podsiadly.backend.series.BucketStats;
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import com.milosz.podsiadly.backend.series.Interval;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Daily and monthly rollups of the hourly measurements. Every write recomputes the UTC days it
+ * touched from the raw rows and the months around them from the daily rows, each with a
+ * {@code $merge} that replaces whole rollup documents, so re-writing an hour never double-counts.
+ * <p>
+ * Coarse history reads take whole days or months from the rollups and only the partial edges
+ * (and hours fetched in the same request) from raw rows, so the work stays roughly flat as the
+ * range grows.
+ */
+@Service
+public class MeasurementRollups {
+
+    public enum Family {
+        WEATHER(WeatherMeasurement.class, WeatherService.VARIABLES,
+                MeasurementCollections.WEATHER_DAILY, MeasurementCollections.WEATHER_MONTHLY),
+        AIR_QUALITY(AirQualityMeasurement.class, AirQualityService.VARIABLES,
+                MeasurementCollections.AIR_QUALITY_DAILY, MeasurementCollections.AIR_QUALITY_MONTHLY);
+
+        final Class<?> entity;
+        final String[] variables;
+        final String daily;
+        final String monthly;
+
+        Family(Class<?> entity, String[] variables, String daily, String monthly) {
+            this.entity = entity;
+            this.variables = variables;
+            this.daily = daily;
+            this.monthly = monthly;
+        }
+    }
+
+    /** {@link MeasurementCollections#MIGRATIONS} document written once the rollups have been built from all existing rows. */
+    public static final String READY_MARKER = "rollups";
+
+    private static final long DAY_HOURS = 24;
+    private static final long DAY_SECONDS = 86_400;
+    private static final long READY_RECHECK_MS = 60_000;
+
+    private final MongoTemplate mongo;
+    private final MeasurementAggregation aggregation;
+
+    private volatile boolean ready;
+    private volatile long nextReadyCheck;
+
+    public MeasurementRollups(MongoTemplate mongo, MeasurementAggregation aggregation) {
+        this.mongo = mongo;
+        this.aggregation = aggregation;
+    }
+
+    /** Brings the rollups up to date for every hour {@code written} holds. */
+    public void refresh(Family family, String locationId, HourlySeries written) {
+        if (written == null || written.isEmpty()) return;
+        long firstDay = Math.floorDiv(written.startHour() + written.nextPresent(0), DAY_HOURS) * DAY_SECONDS;
+        long lastDay  = Math.floorDiv(written.startHour() + written.lastPresent(), DAY_HOURS) * DAY_SECONDS;
+
+        Criteria raw = Criteria.where("locationId").is(locationId).and("recordedAt")
+                .gte(Date.from(Instant.ofEpochSecond(firstDay)))
+                .lt(Date.from(Instant.ofEpochSecond(lastDay + DAY_SECONDS)));
+        rollDays(family, raw);
+
+        long firstMonth = Interval.monthStart(Interval.monthIndex(firstDay));
+        long endMonth   = Interval.monthStart(Interval.monthIndex(lastDay) + 1);
+        Criteria days = Criteria.where("locationId").is(locationId).and("start")
+                .gte(Date.from(Instant.ofEpochSecond(firstMonth)))
+                .lt(Date.from(Instant.ofEpochSecond(endMonth)));
+        rollMonths(family, days);
+    }
+
+    /** Full rebuild from every stored row; used once by the startup backfill. */
+    public void rebuild(Family family) {
+        rollDays(family, new Criteria());
+        rollMonths(family, new Criteria());
+    }
+
+    /**
+     * Buckets {@code [from, to]} by {@code interval}, reading rollups where a whole day or month
+     * fits and has no hour in {@code skip}; everything else comes from raw rows minus {@code skip}.
+     */
+    public BucketStats aggregate(Family family, String locationId,
+                                 Instant from, Instant to, Interval interval, HourlySeries skip) {
+        String rollup = interval.isCalendar() ? family.monthly
+                : interval.seconds() % DAY_SECONDS == 0 && interval.origin() % DAY_SECONDS == 0 ? family.daily
+                : null;
+        String[] variables = family.variables;
+        if (rollup == null || !isReady()) {
+            return aggregation.aggregate(family.entity, variables, locationId, from, to, interval, skip);
+        }
+
+        long fromHour = HourlySeries.ceilHour(from);
+        long toHour   = HourlySeries.epochHour(to);
+        List<long[]> rolled = new ArrayList<>();
+        List<long[]> raw = new ArrayList<>();
+
+        long cursor = fromHour;
+        long unit = firstUnit(rollup == family.monthly, fromHour);
+        for (long next = nextUnit(rollup == family.monthly, unit); next - 1 <= toHour;
+             unit = next, next = nextUnit(rollup == family.monthly, unit)) {
+            if (hasRows(skip, unit, next - 1)) continue;
+            if (cursor < unit) add(raw, cursor, unit - 1);
+            add(rolled, unit, next - 1);
+            cursor = next;
+        }
+        if (cursor <= toHour) add(raw, cursor, toHour);
+
+        return aggregation.aggregateRollup(rollup, variables, locationId, rolled, interval)
+                .merge(aggregation.aggregate(family.entity, variables, locationId, raw, interval, skip));
+    }
+
+    public boolean isReady() {
+        if (ready) return true;
+        long now = System.currentTimeMillis();
+        if (now < nextReadyCheck) return false;
+        nextReadyCheck = now + READY_RECHECK_MS;
+        Document marker = mongo.findById(READY_MARKER, Document.class, MeasurementCollections.MIGRATIONS);
+        ready = marker != null && marker.getBoolean("done", false);
+        return ready;
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    private void rollDays(Family family, Criteria where) {
+        Document key = new Document("l", "$locationId")
+                .append("t", new Document("$dateTrunc", new Document("date", "$recordedAt").append("unit", "day")));
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(match(where));
+        stages.addAll(aggregation.distinctHours(family.variables));
+        stages.add(ctx -> new Document("$group", MeasurementAggregation.rawAccumulators(family.variables, key)));
+        stages.add(ctx -> unpackKey());
+        stages.add(ctx -> mergeInto(family.daily));
+        Aggregation agg = newAggregation(stages)
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        mongo.aggregate(agg, family.entity, Document.class);
+    }
+
+    private void rollMonths(Family family, Criteria where) {
+        Document key = new Document("l", "$locationId")
+                .append("t", new Document("$dateTrunc", new Document("date", "$start").append("unit", "month")));
+        Aggregation agg = newAggregation(
+                match(where),
+                ctx -> new Document("$group", MeasurementAggregation.rolledAccumulators(family.variables, key)),
+                ctx -> unpackKey(),
+                ctx -> mergeInto(family.monthly)
+        ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        mongo.aggregate(agg, family.daily, Document.class);
+    }
+
+    private static Document unpackKey() {
+        return new Document("$set", new Document("locationId", "$_id.l").append("start", "$_id.t"));
+    }
+
+    private static Document mergeInto(String collection) {
+        return new Document("$merge", new Document("into", collection)
+                .append("on", "_id")
+                .append("whenMatched", "replace")
+                .append("whenNotMatched", "insert"));
+    }
+
+    /** First day or month boundary (as an epoch hour) at or after {@code hour}. */
+    private static long firstUnit(boolean monthly, long hour) {
+        if (!monthly) return Math.floorDiv(hour + DAY_HOURS - 1, DAY_HOURS) * DAY_HOURS;
+        long month = Interval.monthStart(Interval.monthIndex(hour * 3600)) / 3600;
+        return month == hour ? hour : nextUnit(true, month);
+    }
+
+    private static long nextUnit(boolean monthly, long unitHour) {
+        if (!monthly) return unitHour + DAY_HOURS;
+        return Interval.monthStart(Interval.monthIndex(unitHour * 3600) + 1) / 3600;
+    }
+
+    private static boolean hasRows(HourlySeries s, long fromHour, long toHour) {
+        if (s == null || s.isEmpty() || toHour < s.startHour() || fromHour > s.endHour()) return false;
+        int o = s.nextPresent((int) Math.max(0, fromHour - s.startHour()));
+        return o >= 0 && s.startHour() + o <= toHour;
+    }
+
+    /** Appends {@code [from, to]}, extending the last range when contiguous. */
+    private static void add(List<long[]> ranges, long from, long to) {
+        long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+        if (last != null && last[1] + 1 >= from) last[1] = Math.max(last[1], to);
+        else ranges.add(new long[] { from, to });
+    }
+}
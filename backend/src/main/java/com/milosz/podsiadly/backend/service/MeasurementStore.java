@@ -0,0 +1,148 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.config.MeasurementCollections;
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes hourly rows keyed by {@code (locationId, recordedAt)}. Regular collections get
+ * unordered bulk upserts; time-series collections, which have no unique index to upsert
+ * against, get the same hours deleted and re-inserted. Writes hold a lock per location for the
+ * whole delete and insert, so two writers of one location cannot both insert the same hour.
+ */
+@Service
+public class MeasurementStore {
+
+    private static final int STRIPES = 64;
+
+    private final MongoTemplate mongo;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    public MeasurementStore(MongoTemplate mongo) {
+        this.mongo = mongo;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantLock();
+    }
+
+    /** Writes every present row of {@code series}, variables stored under their own names. */
+    public int write(List<String> collections, String locationId, HourlySeries series, Map<String, Object> extra) {
+        if (series == null || series.isEmpty()) return 0;
+        List<Document> rows = toDocuments(locationId, series, extra);
+        List<ReentrantLock> held = lock(List.of(locationId));
+        try {
+            for (String c : collections) {
+                if (MeasurementCollections.isTimeSeries(c)) replace(c, locationId, rows);
+                else upsert(c, rows);
+            }
+        } finally {
+            unlock(held);
+        }
+        return rows.size();
+    }
+
+    /** {@link #write} for several locations at once: one bulk, or one delete and insert, per collection. */
+    public int writeAll(List<String> collections, Map<String, HourlySeries> byLocation, Map<String, Object> extra) {
+        List<Document> rows = new ArrayList<>();
+        byLocation.forEach((locationId, series) -> {
+            if (series != null && !series.isEmpty()) rows.addAll(toDocuments(locationId, series, extra));
+        });
+        if (rows.isEmpty()) return 0;
+        List<ReentrantLock> held = lock(byLocation.keySet());
+        try {
+            for (String c : collections) {
+                if (MeasurementCollections.isTimeSeries(c)) replaceAll(c, rows);
+                else upsert(c, rows);
+            }
+        } finally {
+            unlock(held);
+        }
+        return rows.size();
+    }
+
+    /** Time-series write of rows that may span several locations, e.g. a backfill batch. */
+    public void replaceAll(String collection, List<Document> rows) {
+        if (rows.isEmpty()) return;
+        Map<Object, List<Date>> hoursByLocation = new LinkedHashMap<>();
+        for (Document d : rows) {
+            hoursByLocation.computeIfAbsent(d.get("locationId"), k -> new ArrayList<>()).add(d.getDate("recordedAt"));
+        }
+        List<Criteria> keys = new ArrayList<>(hoursByLocation.size());
+        hoursByLocation.forEach((loc, hours) -> keys.add(Criteria.where("locationId").is(loc).and("recordedAt").in(hours)));
+
+        // Reentrant, so callers that already hold these stripes pass straight through.
+        List<ReentrantLock> held = lock(hoursByLocation.keySet());
+        try {
+            mongo.remove(new Query(new Criteria().orOperator(keys)), collection);
+            mongo.getCollection(collection).insertMany(rows);
+        } finally {
+            unlock(held);
+        }
+    }
+
+    /** Takes the stripes of {@code locationIds} in index order, so overlapping batches cannot deadlock. */
+    private List<ReentrantLock> lock(Iterable<?> locationIds) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Object id : locationIds) indexes.add(Math.floorMod(String.valueOf(id).hashCode(), STRIPES));
+        List<ReentrantLock> held = new ArrayList<>(indexes.size());
+        for (int i : indexes) {
+            stripes[i].lock();
+            held.add(stripes[i]);
+        }
+        return held;
+    }
+
+    private static void unlock(List<ReentrantLock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) held.get(i).unlock();
+    }
+
+    private void upsert(String collection, List<Document> rows) {
+        BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+        for (Document d : rows) {
+            Object locationId = d.get("locationId");
+            Query q = new Query(Criteria.where("locationId").is(locationId)
+                    .and("recordedAt").is(d.get("recordedAt")));
+
+            Update u = new Update().setOnInsert("locationId", locationId);
+            d.forEach((k, v) -> { if (!k.equals("locationId")) u.set(k, v); });
+
+            bulk.upsert(q, u);
+        }
+        bulk.execute();
+    }
+
+    private void replace(String collection, String locationId, List<Document> rows) {
+        List<Date> hours = new ArrayList<>(rows.size());
+        for (Document d : rows) hours.add(d.getDate("recordedAt"));
+        mongo.remove(new Query(Criteria.where("locationId").is(locationId).and("recordedAt").in(hours)), collection);
+        mongo.getCollection(collection).insertMany(new ArrayList<>(rows));
+    }
+
+    private static List<Document> toDocuments(String locationId, HourlySeries s, Map<String, Object> extra) {
+        String[] vars = s.variables();
+        List<Document> out = new ArrayList<>(s.presentCount());
+        for (int o = s.nextPresent(0); o >= 0; o = s.nextPresent(o + 1)) {
+            Document d = new Document("locationId", locationId)
+                    .append("recordedAt", Date.from(s.instantAt(o)));
+            for (int v = 0; v < vars.length; v++) {
+                double x = s.at(v, o);
+                d.append(vars[v], Double.isNaN(x) ? null : x);
+            }
+            d.putAll(extra);
+            out.add(d);
+        }
+        return out;
+    }
+}
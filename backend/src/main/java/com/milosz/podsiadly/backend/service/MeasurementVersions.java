@@ -0,0 +1,55 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.config.MeasurementCollections;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counter per measurement family and location, incremented on every write. Anything computed
+ * from the stored rows of a location is unchanged while its counter is, which makes the counter
+ * a cheap validator for history responses. Backed by {@code measurement_versions}, read through
+ * an in-memory copy; counters never go back, so a value seen before a restart stays unique.
+ */
+@Service
+public class MeasurementVersions {
+
+    private final MongoTemplate mongo;
+    private final Map<String, Long> byKey = new ConcurrentHashMap<>();
+
+    public MeasurementVersions(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    public long current(MeasurementRollups.Family family, String locationId) {
+        return byKey.computeIfAbsent(key(family, locationId), this::fromDb);
+    }
+
+    public void bump(MeasurementRollups.Family family, String locationId) {
+        String key = key(family, locationId);
+        Document d = mongo.findAndModify(
+                Query.query(Criteria.where("_id").is(key)),
+                new Update().inc("v", 1L).set("updatedAt", new Date()),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                Document.class, MeasurementCollections.VERSIONS);
+        long v = d == null ? 0 : ((Number) d.get("v")).longValue();
+        byKey.merge(key, v, Math::max);
+    }
+
+    private long fromDb(String key) {
+        Document d = mongo.findById(key, Document.class, MeasurementCollections.VERSIONS);
+        return d == null ? 0 : ((Number) d.get("v")).longValue();
+    }
+
+    private static String key(MeasurementRollups.Family family, String locationId) {
+        return family.name().toLowerCase() + ":" + locationId;
+    }
+}
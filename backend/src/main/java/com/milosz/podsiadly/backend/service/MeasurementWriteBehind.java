@@ -0,0 +1,225 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for fetched measurements, so request threads answer without waiting for
+ * Mongo. Pending rows are merged per {@code (locationId, recordedAt)}, the latest submit winning,
+ * and flushed as one unordered bulk per collection every {@code flush-interval} or as soon as
+ * {@code flush-rows} are pending. A submit that finds {@code max-rows} pending flushes on the
+ * caller's thread instead, so a slow database slows producers down rather than growing the buffer.
+ * Rollups, versions and the {@code afterFlush} steps run only once the rows are stored; a failed
+ * flush puts its rows back under anything newer and is retried on the next one, as far as they fit
+ * under {@code max-rows}. Rows that do not fit are dropped and counted, their {@code afterFlush}
+ * steps never run, so a database that stays down cannot grow the buffer without bound.
+ */
+@Component
+public class MeasurementWriteBehind {
+
+    /** Where rows of one family go and what every row gets besides its variables. */
+    public record Target(MeasurementRollups.Family family, List<String> collections, Map<String, Object> extra) {}
+
+    private record Key(Target target, String locationId) {}
+
+    private static final class Pending {
+        HourlySeries rows;
+        final List<Runnable> afterFlush = new ArrayList<>();
+
+        Pending(HourlySeries rows) {
+            this.rows = rows;
+        }
+    }
+
+    private final MeasurementStore store;
+    private final MeasurementRollups rollups;
+    private final MeasurementVersions versions;
+    private final boolean enabled;
+    private final int flushRows;
+    private final int maxRows;
+
+    private final Map<Key, Pending> pending = new LinkedHashMap<>();
+    private int pendingRows;
+    private final ReentrantLock flushing = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "measurement-write-behind");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Timer flushTime;
+    private final Counter flushed;
+    private final Counter failures;
+    private final Counter dropped;
+    private final Counter callerFlushes;
+
+    public MeasurementWriteBehind(MeasurementStore store, MeasurementRollups rollups, MeasurementVersions versions,
+                                  MeterRegistry meters,
+                                  @Value("${app.storage.write-behind.enabled:true}") boolean enabled,
+                                  @Value("${app.storage.write-behind.flush-interval:PT2S}") Duration flushInterval,
+                                  @Value("${app.storage.write-behind.flush-rows:5000}") int flushRows,
+                                  @Value("${app.storage.write-behind.max-rows:50000}") int maxRows) {
+        this.store = store;
+        this.rollups = rollups;
+        this.versions = versions;
+        this.enabled = enabled;
+        this.flushRows = Math.max(1, flushRows);
+        this.maxRows = Math.max(this.flushRows, maxRows);
+        this.flushTime = meters.timer("measurements.writebehind.flush");
+        this.flushed = meters.counter("measurements.writebehind.rows");
+        this.failures = meters.counter("measurements.writebehind.failures");
+        this.dropped = meters.counter("measurements.writebehind.dropped");
+        this.callerFlushes = meters.counter("measurements.writebehind.caller.flushes");
+        Gauge.builder("measurements.writebehind.pending", this, w -> w.pendingRows()).register(meters);
+
+        long ms = flushInterval.toMillis();
+        executor.scheduleWithFixedDelay(this::flushQuietly, ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * Queues the present rows of {@code rows}; {@code afterFlush}, if not null, runs once they are stored.
+     * The series is copied, so the caller may keep using it.
+     */
+    public void submit(Target target, String locationId, HourlySeries rows, Runnable afterFlush) {
+        if (rows == null || rows.isEmpty()) {
+            if (afterFlush != null) afterFlush.run();
+            return;
+        }
+        boolean full;
+        synchronized (this) {
+            merge(new Key(target, locationId), copy(rows), afterFlush == null ? List.of() : List.of(afterFlush), true);
+            full = pendingRows >= maxRows;
+        }
+        if (!enabled || full) {
+            if (full) callerFlushes.increment();
+            flushQuietly();
+        } else if (pendingRows() >= flushRows && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushScheduled.set(false);
+                    flushQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+                flushQuietly();
+            }
+        }
+    }
+
+    synchronized int pendingRows() {
+        return pendingRows;
+    }
+
+    /** Writes everything pending; later batches wait, so rows of one key are never written out of order. */
+    public void flush() {
+        flushing.lock();
+        try {
+            Map<Key, Pending> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) return;
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+                pendingRows = 0;
+            }
+            flushTime.record(() -> write(batch));
+        } finally {
+            flushing.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            failures.increment();
+        }
+    }
+
+    private void write(Map<Key, Pending> batch) {
+        Map<Target, Map<String, Pending>> byTarget = new LinkedHashMap<>();
+        batch.forEach((k, p) -> byTarget.computeIfAbsent(k.target(), t -> new LinkedHashMap<>()).put(k.locationId(), p));
+
+        for (var e : byTarget.entrySet()) {
+            Target target = e.getKey();
+            Map<String, Pending> byLocation = e.getValue();
+            Map<String, HourlySeries> rows = new LinkedHashMap<>();
+            byLocation.forEach((id, p) -> rows.put(id, p.rows));
+            try {
+                flushed.increment(store.writeAll(target.collections(), rows, target.extra()));
+                byLocation.forEach((id, p) -> {
+                    rollups.refresh(target.family(), id, p.rows);
+                    versions.bump(target.family(), id);
+                    p.afterFlush.forEach(Runnable::run);
+                });
+            } catch (RuntimeException ex) {
+                // Upserts are idempotent, so writing a partly stored batch again is harmless.
+                failures.increment();
+                synchronized (this) {
+                    byLocation.forEach((id, p) -> {
+                        if (pendingRows + p.rows.presentCount() <= maxRows) merge(new Key(target, id), p.rows, p.afterFlush, false);
+                        else dropped.increment(p.rows.presentCount());
+                    });
+                }
+            }
+        }
+    }
+
+    /** Adds {@code rows} under the key; {@code newer} decides which side wins on hours both have. */
+    private void merge(Key key, HourlySeries rows, List<Runnable> afterFlush, boolean newer) {
+        Pending p = pending.get(key);
+        if (p == null) {
+            p = new Pending(rows);
+            pending.put(key, p);
+            pendingRows += rows.presentCount();
+        } else {
+            pendingRows -= p.rows.presentCount();
+            p.rows = newer ? union(p.rows, rows) : union(rows, p.rows);
+            pendingRows += p.rows.presentCount();
+        }
+        p.afterFlush.addAll(afterFlush);
+    }
+
+    private static HourlySeries copy(HourlySeries s) {
+        return copyInto(s, s.startHour(), s.endHour());
+    }
+
+    /** Rows of both, {@code top} winning where both have the hour. */
+    private static HourlySeries union(HourlySeries bottom, HourlySeries top) {
+        HourlySeries out = bottom.startHour() <= top.startHour() && bottom.endHour() >= top.endHour()
+                ? bottom
+                : copyInto(bottom, Math.min(bottom.startHour(), top.startHour()), Math.max(bottom.endHour(), top.endHour()));
+        out.overlay(top);
+        return out;
+    }
+
+    private static HourlySeries copyInto(HourlySeries s, long fromHour, long toHour) {
+        HourlySeries out = HourlySeries.span(fromHour, toHour, s.variables());
+        out.overlay(s);
+        return out;
+    }
+}
@@ -0,0 +1,9 @@
+package com.milosz.podsiadly.backend.service;
+
+import java.io.IOException;
+
+/** Receives history points one at a time, e.g. straight onto a streaming response. */
+@FunctionalInterface
+public interface PointSink<T> {
+    void accept(T point) throws IOException;
+}
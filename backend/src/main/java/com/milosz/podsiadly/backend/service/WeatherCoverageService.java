@@ -0,0 +1,101 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.entity.WeatherCoverage;
+import com.milosz.podsiadly.backend.repository.WeatherCoverageRepository;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-location index of archive hours already present in {@code weather_measurements}.
+ * Backed by {@code weather_coverage}, read through an in-memory copy.
+ */
+@Service
+public class WeatherCoverageService {
+
+    private static final long HOUR = 3600;
+
+    /** Inclusive range of epoch hours. */
+    public record HourRange(long from, long to) {
+        public Instant fromInstant() { return Instant.ofEpochSecond(from * HOUR); }
+        public Instant toInstant()   { return Instant.ofEpochSecond(to * HOUR); }
+    }
+
+    private final WeatherCoverageRepository repo;
+    private final Map<String, List<HourRange>> byLocation = new ConcurrentHashMap<>();
+
+    public WeatherCoverageService(WeatherCoverageRepository repo) {
+        this.repo = repo;
+    }
+
+    public static long epochHour(Instant t) {
+        return Math.floorDiv(t.getEpochSecond(), HOUR);
+    }
+
+    public List<HourRange> missing(String locationId, long fromHour, long toHour) {
+        if (toHour < fromHour) return List.of();
+        List<HourRange> out = new ArrayList<>();
+        long cursor = fromHour;
+        for (HourRange r : load(locationId)) {
+            if (r.to() < cursor) continue;
+            if (r.from() > toHour) break;
+            if (r.from() > cursor) out.add(new HourRange(cursor, r.from() - 1));
+            cursor = r.to() + 1;
+            if (cursor > toHour) return out;
+        }
+        out.add(new HourRange(cursor, toHour));
+        return out;
+    }
+
+    public void markCovered(String locationId, long fromHour, long toHour) {
+        if (toHour < fromHour) return;
+        // Saved inside compute, so concurrent calls for one location reach the database in the order they merged.
+        // If the save fails the in-memory copy stays as it was.
+        byLocation.compute(locationId, (id, cur) -> {
+            List<HourRange> merged = merge(cur != null ? cur : fromDb(id), new HourRange(fromHour, toHour));
+            repo.save(toDoc(id, merged));
+            return merged;
+        });
+    }
+
+    private List<HourRange> load(String locationId) {
+        return byLocation.computeIfAbsent(locationId, this::fromDb);
+    }
+
+    private List<HourRange> fromDb(String locationId) {
+        return repo.findById(locationId)
+                .map(doc -> doc.getRanges().stream()
+                        .map(r -> new HourRange(epochHour(r.getFrom()), epochHour(r.getTo())))
+                        .toList())
+                .orElse(List.of());
+    }
+
+    private static List<HourRange> merge(List<HourRange> ranges, HourRange add) {
+        List<HourRange> out = new ArrayList<>(ranges.size() + 1);
+        long from = add.from(), to = add.to();
+        boolean placed = false;
+        for (HourRange r : ranges) {
+            if (r.to() + 1 < from) {
+                out.add(r);
+            } else if (r.from() > to + 1) {
+                if (!placed) { out.add(new HourRange(from, to)); placed = true; }
+                out.add(r);
+            } else {
+                from = Math.min(from, r.from());
+                to = Math.max(to, r.to());
+            }
+        }
+        if (!placed) out.add(new HourRange(from, to));
+        return List.copyOf(out);
+    }
+
+    private static WeatherCoverage toDoc(String locationId, List<HourRange> ranges) {
+        var docRanges = new ArrayList<WeatherCoverage.Range>(ranges.size());
+        for (HourRange r : ranges) docRanges.add(new WeatherCoverage.Range(r.fromInstant(), r.toInstant()));
+        return WeatherCoverage.builder().locationId(locationId).ranges(docRanges).build();
+    }
+}
@@ -1,21 +1,41 @@
 package com.milosz.podsiadly.backend.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.milosz.podsiadly.backend.config.MeasurementCollections;
 import com.milosz.podsiadly.backend.dto.*;
 import com.milosz.podsiadly.backend.entity.Location;
 import com.milosz.podsiadly.backend.mapper.LocationMapper;
-import com.milosz.podsiadly.backend.mapper.WeatherMeasurementMapper;
-import com.milosz.podsiadly.backend.repository.WeatherMeasurementRepository;
+import com.milosz.podsiadly.backend.series.BucketStats;
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import com.milosz.podsiadly.backend.series.Interval;
+import com.milosz.podsiadly.backend.series.Lttb;
+import com.milosz.podsiadly.backend.series.RunningBuckets;
+import com.milosz.podsiadly.backend.series.Statistic;
+import com.milosz.podsiadly.backend.upstream.FetchPool;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoClient;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoHourly;
+import com.milosz.podsiadly.backend.upstream.Revalidation;
+import com.milosz.podsiadly.backend.upstream.SingleFlight;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClient;
+import org.springframework.web.client.HttpClientErrorException;
 
+import java.io.IOException;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class WeatherService {
@@ -58,22 +78,26 @@ public class WeatherService {
 
     private record OmChunk(LocalDate start, LocalDate end, boolean archive) {}
 
+    /**
+     * Chunks of at most one calendar month, split where the archive API hands over to the forecast
+     * API, so a multi-year range becomes many small requests that can run side by side.
+     */
     private List<OmChunk> planChunks(Instant from, Instant to) {
         LocalDate s = LocalDateTime.ofInstant(from, UTC).toLocalDate();
         LocalDate e = LocalDateTime.ofInstant(to,   UTC).toLocalDate();
         if (e.isBefore(s)) { var tmp = s; s = e; e = tmp; }
         LocalDate cut = recentCutoffDateUtc();
 
-        if (e.isBefore(cut)) {
-            return List.of(new OmChunk(s, e, true));
+        List<OmChunk> out = new ArrayList<>();
+        for (LocalDate a = s; !a.isAfter(e); ) {
+            LocalDate b = a.with(TemporalAdjusters.lastDayOfMonth());
+            if (b.isAfter(e)) b = e;
+            boolean archive = a.isBefore(cut);
+            if (archive && !b.isBefore(cut)) b = cut.minusDays(1);
+            out.add(new OmChunk(a, b, archive));
+            a = b.plusDays(1);
         }
-        if (!s.isBefore(cut)) {
-            return List.of(new OmChunk(s, e, false));
-        }
-        return List.of(
-                new OmChunk(s, cut.minusDays(1), true),
-                new OmChunk(cut, e, false)
-        );
+        return out;
     }
 
     private String buildWeatherUrl(boolean archive, Location loc, LocalDate start, LocalDate end) {
@@ -81,8 +105,8 @@ public class WeatherService {
                 ? "https://archive-api.open-meteo.com/v1/archive"
                 : "https://api.open-meteo.com/v1/forecast";
         return base + "?"
-                + "latitude=" + loc.getLatitude()
-                + "&longitude=" + loc.getLongitude()
+                + "latitude=" + loc.dataLatitude()
+                + "&longitude=" + loc.dataLongitude()
                 + "&hourly=" + HOURLY_FIELDS
                 + "&start_date=" + start
                 + "&end_date=" + end
@@ -93,239 +117,549 @@ public class WeatherService {
 
     private String buildAirUrl(Location loc, LocalDate start, LocalDate end) {
         return "https://air-quality-api.open-meteo.com/v1/air-quality?"
-                + "latitude=" + loc.getLatitude()
-                + "&longitude=" + loc.getLongitude()
+                + "latitude=" + loc.dataLatitude()
+                + "&longitude=" + loc.dataLongitude()
                 + "&hourly=" + AQ_FIELDS
                 + "&start_date=" + start
                 + "&end_date=" + end
                 + "&timezone=UTC";
     }
 
-    private Map<Instant, double[]> fetchAirQuality(Location loc, LocalDate start, LocalDate end) {
-        String url = buildAirUrl(loc, start, end);
-        Map<Instant, double[]> out = new HashMap<>();
+    private OpenMeteoHourly fetchAirQuality(Location loc, LocalDate start, LocalDate end) {
+        return OpenMeteoHourly.parse(http.get(buildAirUrl(loc, start, end)), "pm10", "pm2_5");
+    }
+
+    /**
+     * {@link #fetchAirQuality} for history. The air-quality API keeps far less history than the weather
+     * archive and answers 4xx for dates it does not hold; those hours have no PM and never will, so they
+     * come back empty rather than failed. Throttling and anything transient still fail the chunk.
+     */
+    private OpenMeteoHourly settledAirQuality(Location loc, LocalDate start, LocalDate end) {
         try {
-            String body = http.get().uri(url).retrieve().body(String.class);
-            JsonNode h = om.readTree(body).path("hourly");
-            var times = h.path("time");
-            var pm10  = h.path("pm10");
-            var pm25  = h.path("pm2_5");
-            if (!times.isArray() || !pm10.isArray() || !pm25.isArray()) return out;
-
-            for (int i = 0; i < times.size(); i++) {
-                Instant t = parseOmTime(times.get(i).asText()).truncatedTo(ChronoUnit.HOURS);
-                Double v10 = nodeD(pm10, i);
-                Double v25 = nodeD(pm25, i);
-                out.put(t, new double[] { v10 == null ? Double.NaN : v10, v25 == null ? Double.NaN : v25 });
-            }
-        } catch (Exception ignored) { }
-        return out;
+            return fetchAirQuality(loc, start, end);
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode().value() == 429) throw e;
+            return OpenMeteoHourly.empty();
+        }
     }
 
-    private final RestClient http;
+    private final OpenMeteoClient http;
+    private final SingleFlight flights;
+    private final FetchPool fetchPool;
+    private final Revalidation revalidation;
     private final ObjectMapper om = new ObjectMapper();
-    private final WeatherMeasurementRepository repo;
-    private final WeatherMeasurementMapper measMapper;
+    private final MeasurementRollups rollups;
+    private final MeasurementVersions versions;
+    private final HotLocations hotLocations;
+    private final MeasurementWriteBehind writeBehind;
     private final LocationMapper locationMapper;
-
-    public WeatherService(RestClient http,
-                          WeatherMeasurementRepository repo,
-                          WeatherMeasurementMapper measMapper,
-                          LocationMapper locationMapper) {
+    private final WeatherCoverageService coverage;
+    private final MongoTemplate mongo;
+    private final MeasurementStore store;
+    private final MeasurementCollections collections;
+
+    public WeatherService(OpenMeteoClient http,
+                          SingleFlight flights,
+                          FetchPool fetchPool,
+                          Revalidation revalidation,
+                          MongoTemplate mongo,
+                          MeasurementStore store,
+                          MeasurementCollections collections,
+                          MeasurementRollups rollups,
+                          MeasurementVersions versions,
+                          HotLocations hotLocations,
+                          MeasurementWriteBehind writeBehind,
+                          LocationMapper locationMapper,
+                          WeatherCoverageService coverage) {
         this.http = http;
-        this.repo = repo;
-        this.measMapper = measMapper;
+        this.flights = flights;
+        this.fetchPool = fetchPool;
+        this.revalidation = revalidation;
+        this.mongo = mongo;
+        this.store = store;
+        this.collections = collections;
+        this.rollups = rollups;
+        this.versions = versions;
+        this.hotLocations = hotLocations;
+        this.writeBehind = writeBehind;
         this.locationMapper = locationMapper;
+        this.coverage = coverage;
     }
 
-    public WeatherCurrentDto current(Location loc) {
-        String url = "https://api.open-meteo.com/v1/forecast?"
-                + "latitude=" + loc.getLatitude()
-                + "&longitude=" + loc.getLongitude()
-                + "&current=temperature_2m,relative_humidity_2m,pressure_msl,wind_speed_10m,wind_direction_10m,precipitation,cloud_cover"
+    private static final String CURRENT_FIELDS =
+            "temperature_2m,relative_humidity_2m,pressure_msl,wind_speed_10m,wind_direction_10m,precipitation,cloud_cover";
+
+    private static String currentUrl(Object latitudes, Object longitudes) {
+        return "https://api.open-meteo.com/v1/forecast?"
+                + "latitude=" + latitudes
+                + "&longitude=" + longitudes
+                + "&current=" + CURRENT_FIELDS
                 + "&hourly=precipitation,cloud_cover"
                 + "&past_hours=1&forecast_hours=0"
                 + "&timezone=UTC";
+    }
+
+    public WeatherCurrentDto current(Location loc) {
+        hotLocations.touch(loc.dataKey());
+        if (hotLocations.isFresh(loc.dataKey())) {
+            WeatherCurrentDto stored = newestStored(loc, false);
+            if (stored != null) return stored;
+        }
+
+        String url = currentUrl(loc.dataLatitude(), loc.dataLongitude());
 
-        String body = http.get().uri(url).retrieve().body(String.class);
+        // Concurrent callers for the same place share the fetch, the parse and the write.
+        Supplier<WeatherCurrentDto> fresh = () -> flights.run("weather.current", loc.dataKey(), url,
+                () -> fetchCurrent(loc, url));
         try {
-            JsonNode root = om.readTree(body);
-            JsonNode cur = root.path("current");
-            Instant ts = parseOmTime(cur.path("time").asText()).truncatedTo(ChronoUnit.HOURS);
-
-            Double precipitation = nodeD(cur, "precipitation");
-            Double cloudCover    = nodeD(cur, "cloud_cover");
-
-            if (precipitation == null || cloudCover == null) {
-                JsonNode hourly = root.path("hourly");
-                Instant hourKey = ts;
-                if (precipitation == null) precipitation = valueAtHour(hourly, "precipitation", hourKey);
-                if (cloudCover == null)    cloudCover    = valueAtHour(hourly, "cloud_cover", hourKey);
-            }
+            return fresh.get();
+        } catch (RuntimeException e) {
+            WeatherCurrentDto stored = newestStored(loc, true);
+            if (stored == null) throw e;
+            revalidation.submit("weather.current:" + loc.dataKey(), fresh::get);
+            return stored;
+        }
+    }
 
-            LocalDate day = LocalDateTime.ofInstant(ts, UTC).toLocalDate();
-            Map<Instant, double[]> aq = fetchAirQuality(loc, day, day);
-            double[] aqVals = aq.getOrDefault(ts, new double[] { Double.NaN, Double.NaN });
-            Double pm10 = Double.isNaN(aqVals[0]) ? null : aqVals[0];
-            Double pm25 = Double.isNaN(aqVals[1]) ? null : aqVals[1];
-
-            var p = new WeatherPointDto(
-                    ts,
-                    nodeD(cur, "temperature_2m"),
-                    nodeD(cur, "relative_humidity_2m"),
-                    nodeD(cur, "pressure_msl"),
-                    nodeD(cur, "wind_speed_10m"),
-                    nodeD(cur, "wind_direction_10m"),
-                    precipitation,
-                    cloudCover,
-                    pm10,
-                    pm25
-            );
-
-            repo.save(measMapper.toDoc(p, loc.getId(), SOURCE));
-            return new WeatherCurrentDto(locationMapper.toDto(loc), p, SOURCE);
+    /** The newest stored hour that is not in the future (history stores forecast hours too); null when none is. */
+    private WeatherCurrentDto newestStored(Location loc, boolean stale) {
+        Query q = new Query(Criteria.where("locationId").is(loc.dataKey()).and("recordedAt").lte(Instant.now()))
+                .with(Sort.by(Sort.Direction.DESC, "recordedAt"))
+                .limit(1);
+        Document d = mongo.findOne(q, Document.class, collections.weather());
+        if (d == null) return null;
+        WeatherPointDto point = new WeatherPointDto(
+                d.getDate("recordedAt").toInstant(),
+                number(d, VARIABLES[T]),
+                number(d, VARIABLES[RH]),
+                number(d, VARIABLES[P]),
+                number(d, VARIABLES[WS]),
+                number(d, VARIABLES[WD]),
+                number(d, VARIABLES[PR]),
+                number(d, VARIABLES[CC]),
+                number(d, VARIABLES[PM10]),
+                number(d, VARIABLES[PM25])
+        );
+        return new WeatherCurrentDto(locationMapper.toDto(loc), point, SOURCE, stale);
+    }
+
+    private static Double number(Document d, String field) {
+        return d.get(field) instanceof Number n ? n.doubleValue() : null;
+    }
+
+    private WeatherCurrentDto fetchCurrent(Location loc, String url) {
+        String body = http.get(url);
+        HourlySeries s;
+        try {
+            s = parseCurrent(om.readTree(body));
         } catch (Exception e) {
             throw new RuntimeException("Cannot parse current weather", e);
         }
+
+        long hour = s.startHour();
+        LocalDate day = LocalDateTime.ofInstant(s.instantAt(0), UTC).toLocalDate();
+        OpenMeteoHourly aq;
+        try {
+            aq = fetchAirQuality(loc, day, day);
+        } catch (RuntimeException e) {
+            // PM is optional for current conditions; the hour is fetched again with history anyway.
+            aq = OpenMeteoHourly.empty();
+        }
+        int aqRow = aq.indexOf(hour * 3600);
+        s.set(PM10, 0, aq.value("pm10", aqRow));
+        s.set(PM25, 0, aq.value("pm2_5", aqRow));
+
+        upsertLater(loc.dataKey(), s, null);
+        return new WeatherCurrentDto(locationMapper.toDto(loc), toPoint(s, 0), SOURCE, false);
+    }
+
+    /**
+     * Current conditions of several locations in one multi-coordinate request, with PM taken from
+     * {@code airQuality} (hourly air-quality rows by location id), bulk-written in one go.
+     * @return ids of the locations stored
+     */
+    public List<String> ingestCurrent(List<Location> batch, Map<String, HourlySeries> airQuality) {
+        if (batch.isEmpty()) return List.of();
+        StringJoiner lats = new StringJoiner(",");
+        StringJoiner lons = new StringJoiner(",");
+        for (Location l : batch) {
+            lats.add(String.valueOf(l.dataLatitude()));
+            lons.add(String.valueOf(l.dataLongitude()));
+        }
+
+        JsonNode root;
+        try {
+            root = om.readTree(http.getUncached(currentUrl(lats, lons)));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Cannot parse current weather", e);
+        }
+        List<JsonNode> nodes = new ArrayList<>();
+        if (root.isArray()) root.forEach(nodes::add);
+        else nodes.add(root);
+        if (nodes.size() != batch.size()) throw new IllegalStateException("Unexpected multi-location response size");
+
+        Map<String, HourlySeries> byLocation = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            String id = batch.get(i).dataKey();
+            HourlySeries s = parseCurrent(nodes.get(i));
+            HourlySeries aq = airQuality.get(id);
+            if (aq != null) {
+                s.join("pm10", aq, "pm10");
+                s.join("pm2_5", aq, "pm25");
+            }
+            byLocation.put(id, s);
+        }
+
+        upsertAll(byLocation);
+        return List.copyOf(byLocation.keySet());
     }
 
-    public WeatherHistoryResponseDto history(Location loc, Instant from, Instant to, String interval) {
-        var chunks = planChunks(from, to);
+    /** The {@code current} block of one location as a one-hour series, without PM. */
+    private static HourlySeries parseCurrent(JsonNode root) {
+        JsonNode cur = root.path("current");
+        Instant ts = parseOmTime(cur.path("time").asText()).truncatedTo(ChronoUnit.HOURS);
 
-        LocalDate start = LocalDateTime.ofInstant(from, UTC).toLocalDate();
-        LocalDate end   = LocalDateTime.ofInstant(to,   UTC).toLocalDate();
-        Map<Instant, double[]> aq = fetchAirQuality(loc, start, end);
+        Double precipitation = nodeD(cur, "precipitation");
+        Double cloudCover    = nodeD(cur, "cloud_cover");
 
-        List<WeatherPointDto> apiPoints = new ArrayList<>();
-        for (var ch : chunks) {
-            String url = buildWeatherUrl(ch.archive(), loc, ch.start(), ch.end());
-            try {
-                String body = http.get().uri(url).retrieve().body(String.class);
-                apiPoints.addAll(parseHourlyBlock(body, from, to, aq));
-            } catch (Exception ignored) { }
+        if (precipitation == null || cloudCover == null) {
+            JsonNode hourly = root.path("hourly");
+            Instant hourKey = ts;
+            if (precipitation == null) precipitation = valueAtHour(hourly, "precipitation", hourKey);
+            if (cloudCover == null)    cloudCover    = valueAtHour(hourly, "cloud_cover", hourKey);
         }
 
-        if (!apiPoints.isEmpty()) {
-            repo.saveAll(apiPoints.stream().map(p -> measMapper.toDoc(p, loc.getId(), SOURCE)).toList());
+        long hour = HourlySeries.epochHour(ts);
+        HourlySeries s = HourlySeries.span(hour, hour, VARIABLES);
+        int o = s.touch(hour);
+        s.set(T, o, nodeD(cur, "temperature_2m"));
+        s.set(RH, o, nodeD(cur, "relative_humidity_2m"));
+        s.set(P, o, nodeD(cur, "pressure_msl"));
+        s.set(WS, o, nodeD(cur, "wind_speed_10m"));
+        s.set(WD, o, nodeD(cur, "wind_direction_10m"));
+        s.set(PR, o, precipitation);
+        s.set(CC, o, cloudCover);
+        return s;
+    }
+
+    /**
+     * @param maxPoints when set, the bucketed series is reduced to at most this many rows with LTTB
+     */
+    public WeatherHistoryResponseDto history(Location loc, Instant from, Instant to, String interval,
+                                             String agg, Integer maxPoints) {
+        Buckets b = bucketed(loc, from, to, interval, agg, maxPoints);
+
+        var aggregated = new ArrayList<WeatherPointDto>(b.rows().length);
+        for (int i : b.rows()) {
+            aggregated.add(new WeatherPointDto(
+                    Instant.ofEpochSecond(b.times()[i]),
+                    boxed(b.cols()[T][i]),
+                    boxed(b.cols()[RH][i]),
+                    boxed(b.cols()[P][i]),
+                    boxed(b.cols()[WS][i]),
+                    boxed(b.cols()[WD][i]),
+                    boxed(b.cols()[PR][i]),
+                    boxed(b.cols()[CC][i]),
+                    boxed(b.cols()[PM10][i]),
+                    boxed(b.cols()[PM25][i])
+            ));
         }
 
-        var dbPoints = repo.findByLocationIdAndRecordedAtBetweenOrderByRecordedAt(loc.getId(), from, to)
-                .stream().map(measMapper::toDto).toList();
+        return new WeatherHistoryResponseDto(locationMapper.toDto(loc), interval, aggregated, SOURCE, b.stale());
+    }
+
+    /** Same data as {@link #history}, one array per variable and no per-point objects. */
+    public ColumnarSeriesDto historyColumnar(Location loc, Instant from, Instant to, String interval,
+                                             String agg, Integer maxPoints) {
+        Buckets b = bucketed(loc, from, to, interval, agg, maxPoints);
+        return ColumnarSeriesDto.of(locationMapper.toDto(loc), interval, SOURCE, Interval.parse(interval).seconds(),
+                b.times(), b.rows(), VARIABLES, b.cols(), null);
+    }
+
+    /** Bucket starts, per-variable values, the rows kept after LTTB and whether upstream failed for part of the range. */
+    private record Buckets(long[] times, double[][] cols, int[] rows, boolean stale) {}
+
+    private Buckets bucketed(Location loc, Instant from, Instant to, String interval, String agg, Integer maxPoints) {
+        Statistic[] stats = parseStatistics(agg);
 
-        var merged = new TreeMap<Instant, WeatherPointDto>();
-        dbPoints.forEach(p -> merged.put(p.recordedAt(), p));
-        apiPoints.forEach(p -> merged.put(p.recordedAt(), p));
+        Fetched f = fetchMissing(loc, HourlySeries.ceilHour(from), HourlySeries.epochHour(to));
+        HourlySeries fetched = f.series();
 
-        var step = parseInterval(interval);
-        var aggregated = aggregateToInterval(new ArrayList<>(merged.values()), step);
+        // Stored hours are bucketed by Mongo; only what was just fetched is bucketed here.
+        Interval iv = Interval.parse(interval);
+        BucketStats b = rollups
+                .aggregate(MeasurementRollups.Family.WEATHER, loc.dataKey(), from, to, iv, fetched)
+                .merge(BucketStats.of(fetched, iv));
 
-        return new WeatherHistoryResponseDto(locationMapper.toDto(loc), interval, aggregated, SOURCE);
+        int n = b.size();
+        long[] times = new long[n];
+        double[][] cols = new double[VARIABLES.length][n];
+        for (int i = 0; i < n; i++) {
+            times[i] = b.startSecond(i);
+            for (int v = 0; v < VARIABLES.length; v++) cols[v][i] = b.value(v, i, stats[v]);
+        }
+
+        int[] rows = Lttb.select(times, cols, n, maxPoints == null ? 0 : maxPoints);
+        return new Buckets(times, cols, rows, f.stale());
     }
 
-    private List<WeatherPointDto> parseHourlyBlock(String body, Instant from, Instant to,
-                                                   Map<Instant, double[]> aq) throws Exception {
-        List<WeatherPointDto> out = new ArrayList<>();
-        JsonNode h  = om.readTree(body).path("hourly");
-        var times = h.path("time");
-        if (!times.isArray()) return out;
+    /**
+     * Streaming form of {@link #history}: stored rows are read through a Mongo cursor in time order,
+     * merged with freshly fetched hours and bucketed on the fly, and each bucket goes to {@code sink}
+     * as soon as it closes. Memory stays flat in the length of the range; {@code maxPoints} is not
+     * supported here since LTTB needs the whole series.
+     */
+    public void streamHistory(Location loc, Instant from, Instant to, String interval, String agg,
+                              PointSink<WeatherPointDto> sink) throws IOException {
+        Statistic[] stats = parseStatistics(agg);
+        HourlySeries fetched = fetchMissing(loc, HourlySeries.ceilHour(from), HourlySeries.epochHour(to)).series();
+
+        RunningBuckets buckets = new RunningBuckets(VARIABLES.length, Interval.parse(interval),
+                (start, b) -> sink.accept(toPoint(start, b, stats)));
+
+        List<Criteria> where = new ArrayList<>();
+        where.add(Criteria.where("locationId").is(loc.dataKey()).and("recordedAt").gte(from).lte(to));
+        List<Criteria> skip = MeasurementAggregation.presentRuns(fetched);
+        if (!skip.isEmpty()) where.add(new Criteria().norOperator(skip));
+
+        Query q = new Query(new Criteria().andOperator(where))
+                .with(Sort.by(Sort.Direction.ASC, "recordedAt"))
+                .cursorBatchSize(STREAM_BATCH);
+        q.fields().include("recordedAt").include(VARIABLES);
+
+        double[] row = new double[VARIABLES.length];
+        int o = fetched.nextPresent(0);
+        long previous = Long.MIN_VALUE;
+        try (Stream<Document> docs = mongo.stream(q, Document.class, collections.weather())) {
+            Iterator<Document> it = docs.iterator();
+            while (it.hasNext()) {
+                Document d = it.next();
+                long sec = Math.floorDiv(d.getDate("recordedAt").getTime(), 3_600_000L) * 3600;
+                for (; o >= 0 && fetched.instantAt(o).getEpochSecond() < sec; o = fetched.nextPresent(o + 1)) {
+                    addFetched(buckets, fetched, o, row);
+                }
+                if (sec == previous) continue;
+                for (int v = 0; v < VARIABLES.length; v++) {
+                    Object x = d.get(VARIABLES[v]);
+                    row[v] = x instanceof Number n ? n.doubleValue() : Double.NaN;
+                }
+                buckets.add(sec, row);
+                previous = sec;
+            }
+        }
+        for (; o >= 0; o = fetched.nextPresent(o + 1)) addFetched(buckets, fetched, o, row);
+        buckets.finish();
+    }
 
-        var t2m   = h.path("temperature_2m");
-        var rh    = h.path("relative_humidity_2m");
-        var pmsl  = h.path("pressure_msl");
-        var ws    = h.path("wind_speed_10m");
-        var wd    = h.path("wind_direction_10m");
-        var pr    = h.path("precipitation");
-        var cc    = h.path("cloud_cover");
-        var rain  = h.path("rain");
-        var sh    = h.path("showers");
+    private static void addFetched(RunningBuckets buckets, HourlySeries s, int o, double[] row) throws IOException {
+        for (int v = 0; v < row.length; v++) row[v] = s.at(v, o);
+        buckets.add(s.instantAt(o).getEpochSecond(), row);
+    }
 
-        for (int i = 0; i < times.size(); i++) {
-            Instant ts = parseOmTime(times.get(i).asText()).truncatedTo(ChronoUnit.HOURS);
-            if (ts.isBefore(from) || ts.isAfter(to)) continue;
-
-            Double precip = nodeD(pr, i);
-            if (precip == null) {
-                Double rv = nodeD(rain, i);
-                Double sv = nodeD(sh, i);
-                precip = (rv == null ? 0 : rv) + (sv == null ? 0 : sv);
+    /**
+     * Whether every hour of {@code [from, to]} is archive data already stored, so history for the
+     * window is read without going upstream and will not change any more.
+     */
+    public boolean isArchived(Location loc, Instant from, Instant to) {
+        return coverage.missing(loc.dataKey(), HourlySeries.ceilHour(from), HourlySeries.epochHour(to)).isEmpty();
+    }
+
+    /** Hours fetched for a request; {@code stale} when some part of the gaps could not be fetched. */
+    private record Fetched(HourlySeries series, boolean stale) {}
+
+    /**
+     * Fetches and stores the hours of {@code [firstHour, lastHour]} that coverage says are missing.
+     * Parts that fail are left to stored data and refreshed in the background.
+     */
+    private Fetched fetchMissing(Location loc, long firstHour, long lastHour) {
+        var gaps = coverage.missing(loc.dataKey(), firstHour, lastHour);
+        if (gaps.isEmpty()) return new Fetched(HourlySeries.span(firstHour, firstHour - 1, VARIABLES), false);
+
+        long spanFrom = gaps.get(0).from(), spanTo = gaps.get(gaps.size() - 1).to();
+        HourlySeries fetched = HourlySeries.span(spanFrom, spanTo, VARIABLES);
+        HourlySeries aq = HourlySeries.span(spanFrom, spanTo, AQ_VARIABLES);
+        List<ChunkOutcome> outcomes = new ArrayList<>();
+
+        List<Supplier<Runnable>> chunks = new ArrayList<>();
+        for (var gap : gaps) {
+            for (var ch : planChunks(gap.fromInstant(), gap.toInstant())) {
+                ChunkOutcome outcome = new ChunkOutcome();
+                outcomes.add(outcome);
+                chunks.add(() -> weatherChunk(loc, gap, ch, fetched, outcome));
+                chunks.add(() -> {
+                    HourlySeries s = settledAirQuality(loc, ch.start(), ch.end())
+                            .toSeries(gap.from(), gap.to(), AQ_VARIABLES, AQ_VARIABLES);
+                    return () -> {
+                        aq.overlay(s);
+                        outcome.airQuality = true;
+                    };
+                });
             }
+        }
+        // Parsing happens on the pool; merging on this thread, in whatever order the chunks finish.
+        boolean failed = !fetchPool.forEachCompleted(chunks, Runnable::run);
+        fetched.join("pm10", aq, "pm10");
+        fetched.join("pm2_5", aq, "pm2_5");
+
+        // Only hours with both weather and air quality are final; the rest stay gaps and are fetched again.
+        List<WeatherCoverageService.HourRange> archived = new ArrayList<>();
+        for (ChunkOutcome o : outcomes) {
+            if (o.archived != null && o.airQuality) archived.add(o.archived);
+        }
 
-            double[] pm = aq.getOrDefault(ts, new double[]{Double.NaN, Double.NaN});
-            Double pm10 = Double.isNaN(pm[0]) ? null : pm[0];
-            Double pm25 = Double.isNaN(pm[1]) ? null : pm[1];
-
-            out.add(new WeatherPointDto(
-                    ts,
-                    nodeD(t2m, i),
-                    nodeD(rh, i),
-                    nodeD(pmsl, i),
-                    nodeD(ws, i),
-                    nodeD(wd, i),
-                    precip,
-                    nodeD(cc, i),
-                    pm10,
-                    pm25
-            ));
+        if (!fetched.isEmpty()) {
+            // Ranges count as covered only once their rows are stored, so nobody skips fetching rows not yet written.
+            upsertLater(loc.dataKey(), fetched, () -> archived.forEach(r -> coverage.markCovered(loc.dataKey(), r.from(), r.to())));
         }
-        return out;
+        if (failed) {
+            revalidation.submit("weather.history:" + loc.dataKey() + ":" + firstHour + "-" + lastHour, () -> {
+                if (fetchMissing(loc, firstHour, lastHour).stale()) throw new IllegalStateException("Upstream still failing");
+            });
+        }
+        return new Fetched(fetched, failed);
     }
 
-    private static Duration parseInterval(String interval) {
-        return switch (interval) {
-            case "1h" -> Duration.ofHours(1);
-            case "3h" -> Duration.ofHours(3);
-            case "6h" -> Duration.ofHours(6);
-            case "12h" -> Duration.ofHours(12);
-            case "1d", "24h" -> Duration.ofDays(1);
-            default -> Duration.ofHours(1);
+    /** Queues rows for the write-behind buffer; {@code afterFlush}, if not null, runs once they are stored. */
+    private void upsertLater(String locationId, HourlySeries series, Runnable afterFlush) {
+        writeBehind.submit(new MeasurementWriteBehind.Target(MeasurementRollups.Family.WEATHER,
+                collections.weatherWrites(), Map.of("source", SOURCE)), locationId, series, afterFlush);
+    }
+
+    /** Stores rows of several locations right away, with one bulk write per collection. */
+    public int upsertAll(Map<String, HourlySeries> byLocation) {
+        int n = store.writeAll(collections.weatherWrites(), byLocation, Map.of("source", SOURCE));
+        byLocation.forEach((locationId, series) -> {
+            rollups.refresh(MeasurementRollups.Family.WEATHER, locationId, series);
+            versions.bump(MeasurementRollups.Family.WEATHER, locationId);
+        });
+        return n;
+    }
+
+    /** What the two calls of one chunk delivered; only touched on the merging thread. */
+    private static final class ChunkOutcome {
+        /** Hours served by the archive API, set once the weather call succeeded. */
+        WeatherCoverageService.HourRange archived;
+        boolean airQuality;
+    }
+
+    /**
+     * Fetches and parses one weather chunk of {@code gap}; the returned step adds it to {@code target}
+     * and records the hours served by the archive API in {@code outcome}.
+     */
+    private Runnable weatherChunk(Location loc, WeatherCoverageService.HourRange gap, OmChunk ch,
+                                  HourlySeries target, ChunkOutcome outcome) {
+        String url = buildWeatherUrl(ch.archive(), loc, ch.start(), ch.end());
+        HourlySeries chunk = parseHourlyBlock(http.get(url), gap.from(), gap.to());
+        return () -> {
+            target.overlay(chunk);
+            if (ch.archive() && !chunk.isEmpty()) {
+                outcome.archived = new WeatherCoverageService.HourRange(
+                        chunk.startHour() + chunk.nextPresent(0),
+                        chunk.startHour() + chunk.lastPresent());
+            }
         };
     }
 
-    private static double nz(Double v) { return v == null ? 0.0 : v; }
-
-    private static List<WeatherPointDto> aggregateToInterval(List<WeatherPointDto> points, Duration step) {
-        long stepSec = step.getSeconds();
-        record Acc(double t,double h,double p,double ws,double wd,double pr,double cc,double pm10,double pm25,int n){}
-        var map = new TreeMap<Instant, Acc>();
-
-        for (var p : points) {
-            long bucket = Math.floorDiv(p.recordedAt().getEpochSecond(), stepSec) * stepSec;
-            Instant key = Instant.ofEpochSecond(bucket);
-            var a = map.getOrDefault(key, new Acc(0,0,0,0,0,0,0,0,0,0));
-            a = new Acc(
-                    a.t   + nz(p.temperature()),
-                    a.h   + nz(p.humidity()),
-                    a.p   + nz(p.pressure()),
-                    a.ws  + nz(p.windSpeed()),
-                    a.wd  + nz(p.windDirection()),
-                    a.pr  + nz(p.precipitation()),
-                    a.cc  + nz(p.cloudCover()),
-                    a.pm10+ nz(p.pm10()),
-                    a.pm25+ nz(p.pm2_5()),
-                    a.n   + 1
-            );
-            map.put(key, a);
+    private static final int STREAM_BATCH = 1000;
+
+    private static final String[] HOURLY_COLUMNS = HOURLY_FIELDS.split(",");
+
+    static final String[] VARIABLES = {
+            "temperature", "humidity", "pressure", "windSpeed", "windDirection",
+            "precipitation", "cloudCover", "pm10", "pm2_5"
+    };
+    private static final int T = 0, RH = 1, P = 2, WS = 3, WD = 4, PR = 5, CC = 6, PM10 = 7, PM25 = 8;
+
+    private static final String[] OM_COLUMNS = {
+            "temperature_2m", "relative_humidity_2m", "pressure_msl", "wind_speed_10m", "wind_direction_10m",
+            "precipitation", "cloud_cover", null, null
+    };
+    private static final String[] AQ_VARIABLES = { "pm10", "pm2_5" };
+
+    private HourlySeries parseHourlyBlock(String body, long fromHour, long toHour) {
+        OpenMeteoHourly h = OpenMeteoHourly.parse(body, HOURLY_COLUMNS);
+        HourlySeries s = h.toSeries(fromHour, toHour, VARIABLES, OM_COLUMNS);
+
+        double[] pr   = s.column(PR);
+        double[] rain = h.column("rain");
+        double[] sh   = h.column("showers");
+        for (int i = 0; i < h.size(); i++) {
+            long hour = Math.floorDiv(h.epochSecond(i), 3600L);
+            if (!s.contains(hour)) continue;
+            int o = (int) (hour - s.startHour());
+            if (Double.isNaN(pr[o])) {
+                pr[o] = (Double.isNaN(rain[i]) ? 0 : rain[i]) + (Double.isNaN(sh[i]) ? 0 : sh[i]);
+            }
         }
+        return s;
+    }
 
-        var out = new ArrayList<WeatherPointDto>(map.size());
-        for (var e : map.entrySet()) {
-            var k = e.getKey(); var a = e.getValue(); int n = Math.max(a.n(), 1);
-            out.add(new WeatherPointDto(
-                    k,
-                    a.t()/n,
-                    a.h()/n,
-                    a.p()/n,
-                    a.ws()/n,
-                    a.wd()/n,
-                    a.pr(),
-                    a.cc()/n,
-                    a.pm10()/n,
-                    a.pm25()/n
-            ));
+    private static WeatherPointDto toPoint(HourlySeries s, int o) {
+        return new WeatherPointDto(
+                s.instantAt(o),
+                boxed(s.at(T, o)),
+                boxed(s.at(RH, o)),
+                boxed(s.at(P, o)),
+                boxed(s.at(WS, o)),
+                boxed(s.at(WD, o)),
+                boxed(s.at(PR, o)),
+                boxed(s.at(CC, o)),
+                boxed(s.at(PM10, o)),
+                boxed(s.at(PM25, o))
+        );
+    }
+
+    private static WeatherPointDto toPoint(long startSecond, RunningBuckets b, Statistic[] stats) {
+        return new WeatherPointDto(
+                Instant.ofEpochSecond(startSecond),
+                boxed(b.value(T, stats[T])),
+                boxed(b.value(RH, stats[RH])),
+                boxed(b.value(P, stats[P])),
+                boxed(b.value(WS, stats[WS])),
+                boxed(b.value(WD, stats[WD])),
+                boxed(b.value(PR, stats[PR])),
+                boxed(b.value(CC, stats[CC])),
+                boxed(b.value(PM10, stats[PM10])),
+                boxed(b.value(PM25, stats[PM25]))
+        );
+    }
+
+    private static Double boxed(double v) {
+        return Double.isNaN(v) ? null : v;
+    }
+
+    /**
+     * {@code agg} is a comma list of {@code field:stat} pairs, e.g. {@code temperature:max,precipitation:sum};
+     * a bare {@code stat} applies to every field not named. Default: mean, precipitation summed.
+     */
+    private static Statistic[] parseStatistics(String agg) {
+        Statistic[] out = new Statistic[VARIABLES.length];
+        Arrays.fill(out, Statistic.MEAN);
+        out[PR] = Statistic.SUM;
+        if (agg == null || agg.isBlank()) return out;
+
+        boolean[] named = new boolean[VARIABLES.length];
+        for (String part : agg.split(",")) {
+            int colon = part.indexOf(':');
+            if (colon < 0) {
+                Statistic all = Statistic.parse(part);
+                for (int v = 0; v < out.length; v++) if (!named[v]) out[v] = all;
+                continue;
+            }
+            String field = part.substring(0, colon).trim();
+            int v = indexOfVariable(field);
+            if (v < 0) throw new IllegalArgumentException("Unknown field: " + field);
+            out[v] = Statistic.parse(part.substring(colon + 1));
+            named[v] = true;
         }
         return out;
     }
 
+    private static int indexOfVariable(String field) {
+        for (int v = 0; v < VARIABLES.length; v++) if (VARIABLES[v].equalsIgnoreCase(field)) return v;
+        return -1;
+    }
+
     private static Double valueAtHour(JsonNode hourly, String field, Instant hourKey) {
         var times = hourly.path("time");
         var vals  = hourly.path(field);
@@ -0,0 +1,61 @@
+package com.milosz.podsiadly.backend.upstream;
+
+/**
+ * Per-host breaker: opens after {@code threshold} consecutive failures, rejects every call for
+ * {@code openNanos}, then lets a single probe through (half-open). The probe's outcome closes
+ * the breaker or opens it for another period.
+ */
+final class CircuitBreaker {
+
+    enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final int threshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    CircuitBreaker(int threshold, long openNanos) {
+        this.threshold = threshold;
+        this.openNanos = openNanos;
+    }
+
+    /** Whether a call may go out now; a true answer in half-open state makes the caller the probe. */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> !probing && (probing = true);
+        };
+    }
+
+    /** The call admitted by {@link #tryAcquire} did not reach the host after all. */
+    synchronized void release() {
+        probing = false;
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN || ++failures >= threshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+        }
+    }
+
+    synchronized State state() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) return State.HALF_OPEN;
+        return state;
+    }
+}
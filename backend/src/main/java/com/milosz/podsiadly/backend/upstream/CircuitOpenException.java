@@ -0,0 +1,9 @@
+package com.milosz.podsiadly.backend.upstream;
+
+/** The breaker of an upstream host is open; the call was not attempted. */
+public class CircuitOpenException extends UpstreamBusyException {
+
+    public CircuitOpenException(String host) {
+        super(host);
+    }
+}
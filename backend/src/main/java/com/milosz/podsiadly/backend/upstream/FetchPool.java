@@ -0,0 +1,96 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Shared pool for the independent upstream calls of one request, such as the chunks of a long
+ * history range. A request keeps at most {@code per-request} of its calls running and the pool at
+ * most {@code parallelism} overall; results are handed back to the calling thread in completion
+ * order, so merging needs no locking and starts as soon as the first chunk is in.
+ */
+@Component
+public class FetchPool {
+
+    private final ThreadPoolExecutor pool;
+    private final int perRequest;
+
+    public FetchPool(MeterRegistry meters,
+                     @Value("${app.upstream.fetch.parallelism:8}") int parallelism,
+                     @Value("${app.upstream.fetch.per-request:4}") int perRequest) {
+        AtomicInteger seq = new AtomicInteger();
+        int threads = Math.max(1, parallelism);
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "upstream-fetch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.perRequest = Math.max(1, perRequest);
+        Gauge.builder("upstream.fetch.active", pool, ThreadPoolExecutor::getActiveCount).register(meters);
+        Gauge.builder("upstream.fetch.queued", pool, p -> p.getQueue().size()).register(meters);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Runs {@code tasks} with the caller's {@link UpstreamPriority} and passes each result to
+     * {@code merge} on the calling thread as it completes. A single task runs inline.
+     * @return false when some task failed; the results of the others are still merged
+     */
+    public <T> boolean forEachCompleted(List<? extends Supplier<T>> tasks, Consumer<? super T> merge) {
+        if (tasks.size() == 1) {
+            try {
+                merge.accept(tasks.get(0).get());
+                return true;
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+
+        UpstreamPriority priority = UpstreamPriority.current();
+        CompletionService<T> done = new ExecutorCompletionService<>(pool);
+        int next = 0, running = 0;
+        for (; next < tasks.size() && running < perRequest; next++, running++) {
+            Supplier<T> task = tasks.get(next);
+            done.submit(() -> priority.call(task));
+        }
+
+        boolean ok = true;
+        while (running > 0) {
+            try {
+                Future<T> f = done.take();
+                running--;
+                merge.accept(f.get());
+            } catch (ExecutionException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (next < tasks.size()) {
+                Supplier<T> task = tasks.get(next++);
+                done.submit(() -> priority.call(task));
+                running++;
+            }
+        }
+        return ok;
+    }
+}
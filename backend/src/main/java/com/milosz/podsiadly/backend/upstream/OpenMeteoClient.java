@@ -0,0 +1,52 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Single entry point for Open-Meteo calls. Successful bodies are kept in the
+ * {@link UpstreamCache} under the normalized request; concurrent misses for the same
+ * request share one exchange through {@link SingleFlight}.
+ */
+@Component
+public class OpenMeteoClient {
+
+    private final UpstreamGateway gateway;
+    private final UpstreamCache cache;
+    private final SingleFlight flights;
+
+    public OpenMeteoClient(UpstreamGateway gateway, UpstreamCache cache, SingleFlight flights) {
+        this.gateway = gateway;
+        this.cache = cache;
+        this.flights = flights;
+    }
+
+    public String get(String url) {
+        return fetch(url).body();
+    }
+
+    public UpstreamResponse fetch(String url) {
+        String key = UpstreamRequestKey.normalize(url);
+        UpstreamDataClass cls = classify(url);
+
+        UpstreamResponse cached = cache.get(key, cls);
+        if (cached != null) return cached;
+
+        return flights.run("http", "", url, () -> {
+            UpstreamResponse fresh = gateway.exchange(url);
+            cache.put(key, cls, fresh);
+            return fresh;
+        });
+    }
+
+    /** Bypasses the cache, for callers that keep their own copy of the result. */
+    public String getUncached(String url) {
+        return gateway.exchange(url).body();
+    }
+
+    static UpstreamDataClass classify(String url) {
+        if (url.contains("archive-api.")) return UpstreamDataClass.ARCHIVE;
+        if (url.contains("geocoding-api.")) return UpstreamDataClass.GEOCODING;
+        if (url.contains("current=")) return UpstreamDataClass.CURRENT;
+        return UpstreamDataClass.FORECAST;
+    }
+}
@@ -0,0 +1,229 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.milosz.podsiadly.backend.series.HourlySeries;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code hourly} block of an Open-Meteo response as primitive columns:
+ * epoch-second time axis plus one {@code double[]} per requested variable, NaN for nulls.
+ * Read with a token stream, so no {@code JsonNode} tree or boxed lists are built.
+ */
+public final class OpenMeteoHourly {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final OpenMeteoHourly EMPTY = new OpenMeteoHourly(new long[0], 0, Map.of());
+
+    private final long[] times;
+    private final int size;
+    private final Map<String, double[]> columns;
+
+    private OpenMeteoHourly(long[] times, int size, Map<String, double[]> columns) {
+        this.times = times;
+        this.size = size;
+        this.columns = columns;
+    }
+
+    public static OpenMeteoHourly empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long epochSecond(int i) {
+        return times[i];
+    }
+
+    public Instant time(int i) {
+        return Instant.ofEpochSecond(times[i]);
+    }
+
+    /** Values of {@code field}; all NaN if it was requested but absent from the response. */
+    public double[] column(String field) {
+        double[] c = columns.get(field);
+        if (c != null) return c;
+        double[] nan = new double[size];
+        Arrays.fill(nan, Double.NaN);
+        return nan;
+    }
+
+    public double value(String field, int i) {
+        double[] c = columns.get(field);
+        return c == null || i < 0 || i >= size ? Double.NaN : c[i];
+    }
+
+    /** Index of the row at {@code epochSecond}, or -1. O(1) on a regular hourly axis. */
+    public int indexOf(long epochSecond) {
+        if (size == 0) return -1;
+        long guess = (epochSecond - times[0]) / 3600;
+        if (guess >= 0 && guess < size && times[(int) guess] == epochSecond) return (int) guess;
+        int i = Arrays.binarySearch(times, 0, size, epochSecond);
+        return i >= 0 ? i : -1;
+    }
+
+    /**
+     * Rows inside {@code [fromHour, toHour]} (epoch hours) as a series with the given variables;
+     * {@code fields[i]} feeds {@code variables[i]}, a null field leaves that variable NaN.
+     */
+    public HourlySeries toSeries(long fromHour, long toHour, String[] variables, String[] fields) {
+        HourlySeries s = HourlySeries.span(fromHour, toHour, variables);
+        double[][] src = new double[fields.length][];
+        for (int v = 0; v < fields.length; v++) src[v] = fields[v] == null ? null : columns.get(fields[v]);
+
+        for (int i = 0; i < size; i++) {
+            int off = s.touch(Math.floorDiv(times[i], 3600L));
+            if (off < 0) continue;
+            for (int v = 0; v < src.length; v++) {
+                if (src[v] != null) s.set(v, off, src[v][i]);
+            }
+        }
+        return s;
+    }
+
+    public static OpenMeteoHourly parse(String body, String... fields) {
+        if (body == null || body.isEmpty()) return EMPTY;
+        try (JsonParser p = JSON.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return EMPTY;
+            return readLocation(p, fields);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse Open-Meteo hourly block", e);
+        }
+    }
+
+    /** Multi-coordinate response: one block per location in request order (a single object counts as one). */
+    public static List<OpenMeteoHourly> parseAll(String body, String... fields) {
+        if (body == null || body.isEmpty()) return List.of();
+        try (JsonParser p = JSON.createParser(body)) {
+            JsonToken first = p.nextToken();
+            if (first == JsonToken.START_OBJECT) return List.of(readLocation(p, fields));
+            if (first != JsonToken.START_ARRAY) return List.of();
+            List<OpenMeteoHourly> out = new ArrayList<>();
+            for (JsonToken t = p.nextToken(); t == JsonToken.START_OBJECT; t = p.nextToken()) {
+                out.add(readLocation(p, fields));
+            }
+            return out;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse Open-Meteo hourly block", e);
+        }
+    }
+
+    /** Reads one location object, the parser positioned on its start; leaves it on the object's end. */
+    private static OpenMeteoHourly readLocation(JsonParser p, String[] fields) throws IOException {
+        OpenMeteoHourly out = EMPTY;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            if ("hourly".equals(name) && t == JsonToken.START_OBJECT) {
+                out = readHourly(p, fields);
+            } else {
+                p.skipChildren();
+            }
+        }
+        return out;
+    }
+
+    private static OpenMeteoHourly readHourly(JsonParser p, String[] fields) throws IOException {
+        long[] times = new long[0];
+        int n = 0;
+        Map<String, double[]> cols = new HashMap<>(fields.length * 2);
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            if (t != JsonToken.START_ARRAY) {
+                p.skipChildren();
+                continue;
+            }
+            if ("time".equals(name)) {
+                times = readTimes(p);
+                n = times.length;
+            } else if (isRequested(name, fields)) {
+                cols.put(name, readDoubles(p));
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        // Columns are cut or padded to the time axis; padded hours are missing, not zero.
+        for (Map.Entry<String, double[]> e : cols.entrySet()) {
+            int len = e.getValue().length;
+            if (len == n) continue;
+            double[] fitted = Arrays.copyOf(e.getValue(), n);
+            if (len < n) Arrays.fill(fitted, len, n, Double.NaN);
+            e.setValue(fitted);
+        }
+        return new OpenMeteoHourly(times, n, cols);
+    }
+
+    private static boolean isRequested(String name, String[] fields) {
+        for (String f : fields) if (f.equals(name)) return true;
+        return false;
+    }
+
+    private static long[] readTimes(JsonParser p) throws IOException {
+        long[] out = new long[256];
+        int n = 0;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (n == out.length) out = Arrays.copyOf(out, n * 2);
+            out[n++] = t == JsonToken.VALUE_NUMBER_INT ? p.getLongValue() : parseTime(p.getText());
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static double[] readDoubles(JsonParser p) throws IOException {
+        double[] out = new double[256];
+        int n = 0;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (n == out.length) out = Arrays.copyOf(out, n * 2);
+            out[n++] = (t == JsonToken.VALUE_NUMBER_FLOAT || t == JsonToken.VALUE_NUMBER_INT)
+                    ? p.getDoubleValue()
+                    : Double.NaN;
+        }
+        double[] exact = Arrays.copyOf(out, n);
+        for (int i = 0; i < n; i++) {
+            if (Double.isInfinite(exact[i])) exact[i] = Double.NaN;
+        }
+        return exact;
+    }
+
+    /** {@code yyyy-MM-ddTHH:mm} in UTC (what {@code timezone=UTC} returns); other ISO forms via java.time. */
+    static long parseTime(String s) {
+        if (s.length() == 16 && s.charAt(4) == '-' && s.charAt(7) == '-' && s.charAt(10) == 'T' && s.charAt(13) == ':') {
+            int y = digits(s, 0, 4), mo = digits(s, 5, 7), d = digits(s, 8, 10);
+            int h = digits(s, 11, 13), mi = digits(s, 14, 16);
+            return LocalDate.of(y, mo, d).toEpochDay() * 86_400L + h * 3600L + mi * 60L;
+        }
+        try {
+            return OffsetDateTime.parse(s).toEpochSecond();
+        } catch (RuntimeException e) {
+            return LocalDateTime.parse(s).toEpochSecond(ZoneOffset.UTC);
+        }
+    }
+
+    private static int digits(String s, int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            int c = s.charAt(i) - '0';
+            if (c < 0 || c > 9) throw new IllegalArgumentException("Bad Open-Meteo time: " + s);
+            v = v * 10 + c;
+        }
+        return v;
+    }
+}
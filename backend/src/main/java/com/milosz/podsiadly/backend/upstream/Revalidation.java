@@ -0,0 +1,74 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background refreshes for data that was served stale because upstream was failing. One pending
+ * refresh per key; it is retried every {@code delay} until it succeeds or runs out of attempts.
+ * While a breaker is open the attempts fail at once, and the first one after it half-opens is
+ * the probe that closes it again. Refreshes run as {@link UpstreamPriority#PREFETCH}, so they
+ * yield quota to interactive calls.
+ */
+@Component
+public class Revalidation {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "upstream-revalidate");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final long delayMs;
+    private final int maxAttempts;
+    private final Counter refreshed;
+    private final Counter abandoned;
+
+    public Revalidation(MeterRegistry meters,
+                        @Value("${app.upstream.revalidate.delay:PT15S}") Duration delay,
+                        @Value("${app.upstream.revalidate.max-attempts:40}") int maxAttempts) {
+        this.delayMs = delay.toMillis();
+        this.maxAttempts = maxAttempts;
+        this.refreshed = meters.counter("upstream.revalidations", "outcome", "refreshed");
+        this.abandoned = meters.counter("upstream.revalidations", "outcome", "abandoned");
+        Gauge.builder("upstream.revalidations.pending", pending, Set::size).register(meters);
+    }
+
+    /** Schedules {@code refresh} unless one is already pending under {@code key}. */
+    public void submit(String key, Runnable refresh) {
+        if (pending.add(key)) schedule(key, refresh, 1);
+    }
+
+    private void schedule(String key, Runnable refresh, int attempt) {
+        executor.schedule(() -> {
+            try {
+                UpstreamPriority.PREFETCH.run(refresh);
+                pending.remove(key);
+                refreshed.increment();
+            } catch (RuntimeException e) {
+                if (attempt < maxAttempts) {
+                    schedule(key, refresh, attempt + 1);
+                } else {
+                    pending.remove(key);
+                    abandoned.increment();
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,74 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Registry of upstream work in flight, keyed by the normalized request. The first caller runs
+ * the work; callers arriving before it finishes wait for that run and get its result (or its
+ * exception) instead of issuing the same request again. Nothing is kept once the run completes,
+ * so sharing never outlives the request; {@link UpstreamCache} is what keeps bodies afterwards.
+ */
+@Component
+public class SingleFlight {
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter> coalesced = new ConcurrentHashMap<>();
+    private final Map<String, Counter> led = new ConcurrentHashMap<>();
+    private final MeterRegistry meters;
+
+    public SingleFlight(MeterRegistry meters) {
+        this.meters = meters;
+        Gauge.builder("upstream.inflight", inFlight, Map::size).register(meters);
+    }
+
+    /**
+     * @param call  what the work does with the response, e.g. {@code weather.current}; part of the key
+     *              and the metric tag, so different work on the same URL is never shared
+     * @param scope anything else the result depends on (a location id), or empty
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T run(String call, String scope, String url, Supplier<T> work) {
+        String key = call + "|" + scope + "|" + UpstreamRequestKey.normalize(url);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            counter(coalesced, "upstream.coalesced", call).increment();
+            return (T) await(running);
+        }
+
+        counter(led, "upstream.flights", call).increment();
+        try {
+            T value = work.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            if (e.getCause() instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    private Counter counter(Map<String, Counter> byCall, String name, String call) {
+        return byCall.computeIfAbsent(call, c -> meters.counter(name, "call", c));
+    }
+}
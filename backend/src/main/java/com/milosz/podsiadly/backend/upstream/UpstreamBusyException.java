@@ -0,0 +1,13 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** An upstream host had no free slot in its bulkhead within the queue timeout. */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class UpstreamBusyException extends RuntimeException {
+
+    public UpstreamBusyException(String host) {
+        super("Upstream busy: " + host);
+    }
+}
@@ -0,0 +1,96 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU of upstream bodies keyed by {@link UpstreamRequestKey}. Bounded both by
+ * entry count and by total body length; each entry expires after the TTL of its data class.
+ */
+@Component
+public class UpstreamCache {
+
+    private record Entry(UpstreamResponse value, UpstreamDataClass cls, long expiresAtNanos) {}
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final int maxEntries;
+    private final long maxChars;
+    private final Map<UpstreamDataClass, Duration> ttl = new EnumMap<>(UpstreamDataClass.class);
+    private long chars;
+
+    private final Map<UpstreamDataClass, Counter> hits = new EnumMap<>(UpstreamDataClass.class);
+    private final Map<UpstreamDataClass, Counter> misses = new EnumMap<>(UpstreamDataClass.class);
+    private final Counter evictedSize;
+    private final Counter evictedExpired;
+
+    public UpstreamCache(MeterRegistry meters,
+                         @Value("${app.upstream.cache.max-entries:2000}") int maxEntries,
+                         @Value("${app.upstream.cache.max-chars:64000000}") long maxChars,
+                         @Value("${app.upstream.cache.ttl.archive:PT24H}") Duration archiveTtl,
+                         @Value("${app.upstream.cache.ttl.forecast:PT15M}") Duration forecastTtl,
+                         @Value("${app.upstream.cache.ttl.current:PT5M}") Duration currentTtl,
+                         @Value("${app.upstream.cache.ttl.geocoding:PT24H}") Duration geocodingTtl) {
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+        ttl.put(UpstreamDataClass.ARCHIVE, archiveTtl);
+        ttl.put(UpstreamDataClass.FORECAST, forecastTtl);
+        ttl.put(UpstreamDataClass.CURRENT, currentTtl);
+        ttl.put(UpstreamDataClass.GEOCODING, geocodingTtl);
+
+        for (UpstreamDataClass c : UpstreamDataClass.values()) {
+            String tag = c.name().toLowerCase();
+            hits.put(c, meters.counter("upstream.cache.hits", "class", tag));
+            misses.put(c, meters.counter("upstream.cache.misses", "class", tag));
+        }
+        evictedSize = meters.counter("upstream.cache.evictions", "cause", "size");
+        evictedExpired = meters.counter("upstream.cache.evictions", "cause", "expired");
+        Gauge.builder("upstream.cache.entries", this, UpstreamCache::size).register(meters);
+    }
+
+    public synchronized UpstreamResponse get(String key, UpstreamDataClass cls) {
+        Entry e = entries.get(key);
+        if (e != null && e.expiresAtNanos() - System.nanoTime() <= 0) {
+            remove(key, e);
+            evictedExpired.increment();
+            e = null;
+        }
+        (e == null ? misses : hits).get(cls).increment();
+        return e == null ? null : e.value();
+    }
+
+    public synchronized void put(String key, UpstreamDataClass cls, UpstreamResponse value) {
+        Duration t = ttl.get(cls);
+        if (t.isZero() || t.isNegative() || value.body() == null) return;
+
+        Entry old = entries.put(key, new Entry(value, cls, System.nanoTime() + t.toNanos()));
+        if (old != null) chars -= old.value().body().length();
+        chars += value.body().length();
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || chars > maxChars) && it.hasNext()) {
+            var eldest = it.next();
+            if (eldest.getKey().equals(key) && entries.size() == 1) break;
+            chars -= eldest.getValue().value().body().length();
+            it.remove();
+            evictedSize.increment();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(String key, Entry e) {
+        entries.remove(key);
+        chars -= e.value().body().length();
+    }
+}
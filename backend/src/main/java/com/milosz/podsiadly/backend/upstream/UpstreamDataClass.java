@@ -0,0 +1,5 @@
+package com.milosz.podsiadly.backend.upstream;
+
+public enum UpstreamDataClass {
+    ARCHIVE, FORECAST, CURRENT, GEOCODING
+}
@@ -0,0 +1,139 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+
+/**
+ * The only place that talks HTTP to Open-Meteo. Each host (forecast, archive, air-quality,
+ * geocoding) has its own bulkhead, so a slow archive API can hold at most its own slots and
+ * never every request thread. A call over budget waits up to the queue timeout for a slot
+ * ({@code PT0S} fails fast) and is then rejected with {@link UpstreamBusyException}.
+ * <p>
+ * Each host also has a {@link CircuitBreaker}: after repeated timeouts, I/O errors, 5xx or 429
+ * answers, calls are rejected at once with {@link CircuitOpenException} until a probe succeeds,
+ * so callers can fall back to stored data without waiting for the timeouts.
+ * <p>
+ * Calls that get past the breaker are admitted by the {@link UpstreamScheduler} quotas before
+ * they take a bulkhead slot; a call then turned away by the bulkhead gives its tokens back, as it
+ * never reached the host.
+ */
+@Component
+public class UpstreamGateway {
+
+    private record Bulkhead(String name, int size, Semaphore slots, Counter rejected,
+                            CircuitBreaker circuit, Counter shortCircuited) {}
+
+    private final RestClient http;
+    private final UpstreamScheduler scheduler;
+    private final Map<String, Bulkhead> byHost = new LinkedHashMap<>();
+    private final Bulkhead other;
+    private final long queueTimeoutNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    public UpstreamGateway(RestClient http, UpstreamScheduler scheduler, MeterRegistry meters,
+                           @Value("${app.upstream.bulkhead.forecast:16}") int forecast,
+                           @Value("${app.upstream.bulkhead.archive:4}") int archive,
+                           @Value("${app.upstream.bulkhead.air-quality:8}") int airQuality,
+                           @Value("${app.upstream.bulkhead.geocoding:4}") int geocoding,
+                           @Value("${app.upstream.bulkhead.queue-timeout:PT2S}") Duration queueTimeout,
+                           @Value("${app.upstream.circuit.failure-threshold:5}") int failureThreshold,
+                           @Value("${app.upstream.circuit.open-duration:PT30S}") Duration openDuration) {
+        this.http = http;
+        this.scheduler = scheduler;
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        byHost.put("api.open-meteo.com", bulkhead(meters, "forecast", forecast));
+        byHost.put("archive-api.open-meteo.com", bulkhead(meters, "archive", archive));
+        byHost.put("air-quality-api.open-meteo.com", bulkhead(meters, "air-quality", airQuality));
+        byHost.put("geocoding-api.open-meteo.com", bulkhead(meters, "geocoding", geocoding));
+        other = bulkhead(meters, "other", forecast);
+    }
+
+    public UpstreamResponse exchange(String url) {
+        UriComponents uri = UriComponentsBuilder.fromUriString(url).build();
+        Bulkhead b = byHost.getOrDefault(uri.getHost(), other);
+        if (!b.circuit().tryAcquire()) {
+            b.shortCircuited().increment();
+            throw new CircuitOpenException(b.name());
+        }
+        int weight = weight(uri);
+        try {
+            scheduler.acquire(b.name(), weight);
+        } catch (RuntimeException e) {
+            b.circuit().release();
+            throw e;
+        }
+        acquire(b, weight);
+        try {
+            ResponseEntity<String> resp = http.get().uri(url).retrieve().toEntity(String.class);
+            b.circuit().onSuccess();
+            Instant date = Instant.now();
+            try {
+                String header = resp.getHeaders().getFirst("Date");
+                if (header != null) date = ZonedDateTime.parse(header, RFC_1123_DATE_TIME).toInstant();
+            } catch (Exception ignored) { /* keep local clock */ }
+            return new UpstreamResponse(resp.getBody(), date);
+        } catch (HttpClientErrorException e) {
+            // The host answered; only throttling says it is in trouble.
+            if (e.getStatusCode().value() == 429) b.circuit().onFailure();
+            else b.circuit().onSuccess();
+            throw e;
+        } catch (RuntimeException e) {
+            b.circuit().onFailure();
+            throw e;
+        } finally {
+            b.slots().release();
+        }
+    }
+
+    /** Open-Meteo counts a multi-coordinate request once per coordinate. */
+    private static int weight(UriComponents uri) {
+        String lat = uri.getQueryParams().getFirst("latitude");
+        return lat == null ? 1 : lat.split(",").length;
+    }
+
+    private void acquire(Bulkhead b, int weight) {
+        try {
+            if (b.slots().tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.release(b.name(), weight);
+        b.circuit().release();
+        b.rejected().increment();
+        throw new UpstreamBusyException(b.name());
+    }
+
+    private Bulkhead bulkhead(MeterRegistry meters, String name, int size) {
+        Semaphore slots = new Semaphore(size, true);
+        CircuitBreaker circuit = new CircuitBreaker(failureThreshold, openNanos);
+        Gauge.builder("upstream.circuit.state", circuit, c -> c.state().ordinal())
+                .description("0 closed, 1 half-open, 2 open").tag("host", name).register(meters);
+        Gauge.builder("upstream.bulkhead.active", slots, s -> size - s.availablePermits())
+                .tag("host", name).register(meters);
+        Gauge.builder("upstream.bulkhead.queued", slots, Semaphore::getQueueLength)
+                .tag("host", name).register(meters);
+        return new Bulkhead(name, size, slots, meters.counter("upstream.bulkhead.rejected", "host", name),
+                circuit, meters.counter("upstream.circuit.rejected", "host", name));
+    }
+}
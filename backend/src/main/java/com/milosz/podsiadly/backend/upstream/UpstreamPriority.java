@@ -0,0 +1,45 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import java.util.function.Supplier;
+
+/**
+ * Priority class of the upstream calls made by the current thread; request threads are
+ * {@link #INTERACTIVE} unless work is wrapped in {@link #call}. {@code reserve} is the share of a
+ * quota bucket a class must leave untouched, so lower classes stop before interactive calls starve.
+ */
+public enum UpstreamPriority {
+
+    INTERACTIVE(0.0),
+    PREFETCH(0.25),
+    BACKFILL(0.5);
+
+    private static final ThreadLocal<UpstreamPriority> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+    final double reserve;
+
+    UpstreamPriority(double reserve) {
+        this.reserve = reserve;
+    }
+
+    public static UpstreamPriority current() {
+        return CURRENT.get();
+    }
+
+    /** Runs {@code work} with this priority on the current thread. */
+    public <T> T call(Supplier<T> work) {
+        UpstreamPriority previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public void run(Runnable work) {
+        call(() -> {
+            work.run();
+            return null;
+        });
+    }
+}
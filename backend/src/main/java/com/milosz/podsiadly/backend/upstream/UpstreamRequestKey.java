@@ -0,0 +1,61 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * Canonical form of an Open-Meteo URL: parameters sorted, variable lists sorted,
+ * coordinates rounded to 4 decimals (~10 m, far below the model grid).
+ */
+final class UpstreamRequestKey {
+
+    private static final Set<String> COORDINATES = Set.of("latitude", "longitude");
+    private static final Set<String> VARIABLES = Set.of("hourly", "daily", "current");
+
+    private UpstreamRequestKey() {}
+
+    static String normalize(String url) {
+        UriComponents uri = UriComponentsBuilder.fromUriString(url).build();
+        MultiValueMap<String, String> params = uri.getQueryParams();
+
+        var sorted = new TreeMap<String, String>();
+        params.forEach((name, values) -> sorted.put(name, normalizeValue(name, String.join(",", values))));
+
+        StringJoiner q = new StringJoiner("&");
+        sorted.forEach((k, v) -> q.add(k + "=" + v));
+        return uri.getHost() + uri.getPath() + "?" + q;
+    }
+
+    private static String normalizeValue(String name, String value) {
+        if (value == null) return "";
+        if (COORDINATES.contains(name)) {
+            StringJoiner j = new StringJoiner(",");
+            for (String part : value.split(",")) j.add(round(part));
+            return j.toString();
+        }
+        if (VARIABLES.contains(name)) {
+            String[] parts = value.split(",");
+            Arrays.sort(parts);
+            return String.join(",", parts);
+        }
+        if (name.equals("name")) return value.trim().toLowerCase(Locale.ROOT);
+        return value;
+    }
+
+    private static String round(String coordinate) {
+        try {
+            return new BigDecimal(coordinate.trim()).setScale(4, RoundingMode.HALF_UP).toPlainString();
+        } catch (NumberFormatException e) {
+            return coordinate;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import java.time.Instant;
+
+public record UpstreamResponse(String body, Instant date) {}
@@ -0,0 +1,154 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission of upstream calls against per-family quotas (forecast, archive, air-quality,
+ * geocoding), each a token bucket holding one minute of budget and refilled continuously.
+ * <p>
+ * A call takes as many tokens as it has coordinates. Interactive calls may empty the bucket;
+ * {@link UpstreamPriority#PREFETCH} and {@link UpstreamPriority#BACKFILL} must leave their
+ * {@code reserve} in it and never overtake a waiting call of a higher class, so they back off
+ * as soon as interactive traffic picks up. Each class waits at most its deadline, and a call
+ * that cannot get tokens before the deadline is rejected at once instead of queueing in vain.
+ */
+@Component
+public class UpstreamScheduler {
+
+    private final Map<String, Bucket> buckets = new HashMap<>();
+    private final Map<UpstreamPriority, Long> deadlines = new EnumMap<>(UpstreamPriority.class);
+    private final MeterRegistry meters;
+
+    public UpstreamScheduler(MeterRegistry meters,
+                             @Value("${app.upstream.quota.forecast:300}") int forecast,
+                             @Value("${app.upstream.quota.archive:100}") int archive,
+                             @Value("${app.upstream.quota.air-quality:150}") int airQuality,
+                             @Value("${app.upstream.quota.geocoding:60}") int geocoding,
+                             @Value("${app.upstream.quota.deadline.interactive:PT2S}") Duration interactive,
+                             @Value("${app.upstream.quota.deadline.prefetch:PT30S}") Duration prefetch,
+                             @Value("${app.upstream.quota.deadline.backfill:PT2M}") Duration backfill) {
+        this.meters = meters;
+        deadlines.put(UpstreamPriority.INTERACTIVE, interactive.toNanos());
+        deadlines.put(UpstreamPriority.PREFETCH, prefetch.toNanos());
+        deadlines.put(UpstreamPriority.BACKFILL, backfill.toNanos());
+        buckets.put("forecast", new Bucket("forecast", forecast));
+        buckets.put("archive", new Bucket("archive", archive));
+        buckets.put("air-quality", new Bucket("air-quality", airQuality));
+        buckets.put("geocoding", new Bucket("geocoding", geocoding));
+        buckets.put("other", new Bucket("other", forecast));
+    }
+
+    /** Blocks until {@code weight} tokens of {@code family} are granted to the current priority. */
+    public void acquire(String family, int weight) {
+        UpstreamPriority p = UpstreamPriority.current();
+        buckets.getOrDefault(family, buckets.get("other")).acquire(p, weight, System.nanoTime() + deadlines.get(p));
+    }
+
+    /** Gives back what {@link #acquire} took, on the same thread, for a call that was never sent. */
+    public void release(String family, int weight) {
+        buckets.getOrDefault(family, buckets.get("other")).release(UpstreamPriority.current(), weight);
+    }
+
+    private final class Bucket {
+
+        private final String name;
+        private final double capacity;
+        private final double perNano;
+        private final int[] waiting = new int[UpstreamPriority.values().length];
+        private final Map<UpstreamPriority, Counter> rejected = new EnumMap<>(UpstreamPriority.class);
+        private final Map<UpstreamPriority, Timer> waited = new EnumMap<>(UpstreamPriority.class);
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        Bucket(String name, int perMinute) {
+            this.name = name;
+            this.capacity = Math.max(1, perMinute);
+            this.perNano = capacity / TimeUnit.MINUTES.toNanos(1);
+            this.tokens = capacity;
+            Gauge.builder("upstream.quota.tokens", this, b -> b.level()).tag("family", name).register(meters);
+            for (UpstreamPriority p : UpstreamPriority.values()) {
+                String tag = p.name().toLowerCase();
+                Gauge.builder("upstream.quota.queued", this, b -> b.queued(p))
+                        .tags("family", name, "priority", tag).register(meters);
+                rejected.put(p, meters.counter("upstream.quota.rejected", "family", name, "priority", tag));
+                waited.put(p, Timer.builder("upstream.quota.wait").tags("family", name, "priority", tag).register(meters));
+            }
+        }
+
+        synchronized void acquire(UpstreamPriority p, int weight, long deadline) {
+            long start = System.nanoTime();
+            double floor = capacity * p.reserve;
+            double need = need(p, weight);
+            waiting[p.ordinal()]++;
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    boolean overtaking = higherWaiting(p);
+                    if (!overtaking && tokens - need >= floor) {
+                        tokens -= need;
+                        waited.get(p).record(now - start, TimeUnit.NANOSECONDS);
+                        return;
+                    }
+                    long left = deadline - now;
+                    long eta = overtaking ? 0 : (long) Math.ceil((floor + need - tokens) / perNano);
+                    if (left <= 0 || eta > left) {
+                        rejected.get(p).increment();
+                        throw new UpstreamBusyException(name + " quota");
+                    }
+                    // Woken early when a higher-priority waiter leaves; otherwise when tokens should be there.
+                    long sleep = overtaking ? left : eta;
+                    TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, sleep));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected.get(p).increment();
+                throw new UpstreamBusyException(name + " quota");
+            } finally {
+                waiting[p.ordinal()]--;
+                notifyAll();
+            }
+        }
+
+        synchronized void release(UpstreamPriority p, int weight) {
+            refill(System.nanoTime());
+            tokens = Math.min(capacity, tokens + need(p, weight));
+            notifyAll();
+        }
+
+        /** Tokens a call takes; never more than the class may use, so a heavy call cannot wait forever. */
+        private double need(UpstreamPriority p, int weight) {
+            return Math.min(weight, capacity - capacity * p.reserve);
+        }
+
+        private boolean higherWaiting(UpstreamPriority p) {
+            for (int i = 0; i < p.ordinal(); i++) if (waiting[i] > 0) return true;
+            return false;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * perNano);
+            refilledAt = now;
+        }
+
+        synchronized double level() {
+            refill(System.nanoTime());
+            return tokens;
+        }
+
+        synchronized int queued(UpstreamPriority p) {
+            return waiting[p.ordinal()];
+        }
+    }
+}
@@ -21,7 +21,10 @@ import org.springframework.context.annotation.Import;
                 "spring.main.web-application-type=none",
                 "spring.main.lazy-initialization=true",
                 "springdoc.api-docs.enabled=false",
-                "springdoc.swagger-ui.enabled=false"
+                "springdoc.swagger-ui.enabled=false",
+                "app.migrations.enabled=false",
+                "app.ingestion.enabled=false",
+                "app.locations.index.preload=false"
         }
 )
 @EnableAutoConfiguration(exclude = {
@@ -0,0 +1,77 @@
+package com.milosz.podsiadly.backend.config;
+
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.actuate.info.Info;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MeasurementStorageInfoTest {
+
+    private static final Instant NEWEST = Instant.parse("2024-06-30T23:00:00Z");
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void bothWeatherCollectionsScanTheSameWindowOfTheSameLocation() {
+        MongoTemplate mongo = mock(MongoTemplate.class);
+        when(mongo.collectionExists(MeasurementCollections.WEATHER)).thenReturn(true);
+        when(mongo.collectionExists(MeasurementCollections.WEATHER_TS)).thenReturn(true);
+        MongoCollection<Document> collection = mock(MongoCollection.class, RETURNS_DEEP_STUBS);
+        when(collection.aggregate(anyList()).first()).thenReturn(new Document("storageStats",
+                new Document("count", 720).append("size", 90_000).append("storageSize", 40_000)));
+        when(mongo.getCollection(anyString())).thenReturn(collection);
+        when(mongo.findOne(any(Query.class), eq(Document.class), eq(MeasurementCollections.WEATHER)))
+                .thenReturn(new Document("locationId", "waw").append("recordedAt", Date.from(NEWEST)));
+        when(mongo.find(any(Query.class), eq(Document.class), eq(MeasurementCollections.WEATHER)))
+                .thenReturn(Collections.nCopies(720, new Document()));
+        when(mongo.find(any(Query.class), eq(Document.class), eq(MeasurementCollections.WEATHER_TS)))
+                .thenReturn(Collections.nCopies(719, new Document()));
+
+        Info.Builder info = new Info.Builder();
+        new MeasurementStorageInfo(mongo, new MeasurementCollections("dual")).contribute(info);
+
+        Map<String, Object> out = (Map<String, Object>) info.build().get("measurementStorage");
+        assertThat(out).containsKeys("mode", MeasurementCollections.WEATHER, MeasurementCollections.WEATHER_TS)
+                .doesNotContainKeys(MeasurementCollections.AIR_QUALITY, "backfill");
+        Map<String, Object> legacy = (Map<String, Object>) out.get(MeasurementCollections.WEATHER);
+        Map<String, Object> ts = (Map<String, Object>) out.get(MeasurementCollections.WEATHER_TS);
+        assertThat(legacy).containsEntry("documents", 720).containsEntry("storageBytes", 40_000);
+        assertThat((Map<String, Object>) legacy.get("rangeScan")).containsEntry("rows", 720).containsKey("micros");
+        assertThat((Map<String, Object>) ts.get("rangeScan")).containsEntry("rows", 719);
+
+        ArgumentCaptor<Query> scans = ArgumentCaptor.forClass(Query.class);
+        verify(mongo, times(2)).find(scans.capture(), eq(Document.class), anyString());
+        assertThat(scans.getAllValues()).extracting(Query::getQueryObject).allSatisfy(q -> {
+            assertThat(q.get("locationId")).isEqualTo("waw");
+            Document recordedAt = q.get("recordedAt", Document.class);
+            assertThat(recordedAt.get("$lte")).isEqualTo(Date.from(NEWEST));
+            assertThat(recordedAt.get("$gt"))
+                    .isEqualTo(Date.from(NEWEST.minus(MeasurementStorageInfo.SCAN_WINDOW)));
+        });
+        verify(mongo, never()).findOne(any(Query.class), eq(Document.class), eq(MeasurementCollections.WEATHER_TS));
+    }
+
+    @Test
+    void nothingIsScannedWithoutStoredRows() {
+        MongoTemplate mongo = mock(MongoTemplate.class);
+        when(mongo.findAll(Document.class, MeasurementCollections.MIGRATIONS)).thenReturn(List.of());
+
+        Info.Builder info = new Info.Builder();
+        new MeasurementStorageInfo(mongo, new MeasurementCollections("legacy")).contribute(info);
+
+        assertThat(info.build().get("measurementStorage")).isEqualTo(Map.of("mode", "legacy"));
+        verify(mongo, never()).find(any(Query.class), any(), anyString());
+    }
+}
@@ -0,0 +1,183 @@
+package com.milosz.podsiadly.backend.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.milosz.podsiadly.backend.config.ColumnarBinaryConverter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarSeriesDtoTest {
+
+    private static final int HOURS = 8760;
+    private static final long START = Instant.parse("2024-01-01T00:00:00Z").getEpochSecond();
+    private static final String[] NAMES = {
+            "temperature", "humidity", "pressure", "windSpeed", "windDirection",
+            "precipitation", "cloudCover", "pm10", "pm2_5"
+    };
+
+    private final ObjectMapper json = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void regularRowsUseAStepInsteadOfOffsets() {
+        ColumnarSeriesDto c = ColumnarSeriesDto.of(null, "1h", "open-meteo", 3600, times(HOURS), allRows(HOURS),
+                NAMES, year(), null);
+        assertThat(c.step()).isEqualTo(3600);
+        assertThat(c.offsets()).isNull();
+        assertThat(c.length()).isEqualTo(HOURS);
+    }
+
+    @Test
+    void irregularRowsKeepOffsets() {
+        long[] times = { 0, 3600, 7200 * 50 };
+        double[][] cols = { { 1, 2, 3 } };
+        ColumnarSeriesDto c = ColumnarSeriesDto.of(null, null, null, 3600, times, new int[] { 0, 1, 2 },
+                new String[] { "x" }, cols, null);
+        assertThat(c.offsets()).containsExactly(0, 3600, 360_000);
+        assertThat(c.length()).isEqualTo(3);
+    }
+
+    @Test
+    void binaryFrameDecodesToTheSameColumns() throws IOException {
+        long[] times = { START, START + 3600, START + 3 * 3600 };
+        double[][] cols = { { 1.5, Double.NaN, -2.25 }, { Double.NaN, Double.NaN, Double.NaN } };
+        ColumnarSeriesDto c = ColumnarSeriesDto.of(null, "1h", null, 3600, times, new int[] { 0, 1, 2 },
+                new String[] { "temperature", "pm2_5" }, cols, null);
+
+        DataInputStream in = frame(c);
+
+        assertThat(new String(in.readNBytes(4), StandardCharsets.US_ASCII)).isEqualTo("WVC1");
+        assertThat(in.readLong()).isEqualTo(START);
+        assertThat(in.readLong()).isEqualTo(3600);
+        assertThat(in.readInt()).isEqualTo(4);
+        assertThat(in.readUnsignedShort()).isEqualTo(2);
+
+        assertThat(name(in)).isEqualTo("temperature");
+        assertThat(in.readUnsignedByte()).isEqualTo(1);
+        assertThat(new float[] { in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat() })
+                .containsExactly(1.5f, Float.NaN, Float.NaN, -2.25f);
+
+        assertThat(name(in)).isEqualTo("pm2_5");
+        assertThat(in.readUnsignedByte()).isZero();
+        assertThat(in.read()).isEqualTo(-1);
+    }
+
+    @Test
+    void binaryFrameCarriesOffsetsForIrregularRows() throws IOException {
+        long[] times = { START, START + 86_400 * 31, START + 86_400 * 60 };
+        ColumnarSeriesDto c = ColumnarSeriesDto.of(null, "1mo", null, 0, times, new int[] { 0, 1, 2 },
+                new String[] { "x" }, new double[][] { { 1, 2, 3 } }, null);
+
+        DataInputStream in = frame(c);
+
+        in.skipNBytes(4 + 8);
+        assertThat(in.readLong()).isZero();
+        assertThat(in.readInt()).isEqualTo(3);
+        assertThat(new int[] { in.readInt(), in.readInt(), in.readInt() })
+                .containsExactly(0, 86_400 * 31, 86_400 * 60);
+        assertThat(in.readUnsignedShort()).isEqualTo(1);
+        assertThat(name(in)).isEqualTo("x");
+        assertThat(in.readUnsignedByte()).isEqualTo(1);
+        assertThat(new float[] { in.readFloat(), in.readFloat(), in.readFloat() }).containsExactly(1f, 2f, 3f);
+        assertThat(in.read()).isEqualTo(-1);
+    }
+
+    @Test
+    void jsonWritesGapsAsNullAndEmptyColumnsAsASingleNull() throws IOException {
+        long[] times = { START, START + 3 * 3600 };
+        double[][] cols = { { 1.5, -2.25 }, { Double.NaN, Double.NaN } };
+        ColumnarSeriesDto c = ColumnarSeriesDto.of(null, "1h", null, 3600, times, new int[] { 0, 1 },
+                new String[] { "temperature", "pm2_5" }, cols, null);
+
+        JsonNode node = json.readTree(json.writeValueAsBytes(c));
+
+        assertThat(node.get("start").asText()).isEqualTo("2024-01-01T00:00:00Z");
+        assertThat(node.get("step").asLong()).isEqualTo(3600);
+        assertThat(node.get("length").asInt()).isEqualTo(4);
+        assertThat(node.at("/columns/temperature").toString()).isEqualTo("[1.5,null,null,-2.25]");
+        assertThat(node.at("/columns/pm2_5").isNull()).isTrue();
+    }
+
+    /** Payload comparison over a full year; run with {@code -Pbenchmarks}. */
+    @Test
+    @Tag("benchmark")
+    void columnarYearIsSeveralTimesSmallerThanPointObjects() throws Exception {
+        long[] times = times(HOURS);
+        double[][] values = year();
+        var objects = new WeatherHistoryResponseDto(null, "1h", points(times, values), "open-meteo", false);
+        var columnar = ColumnarSeriesDto.of(null, "1h", "open-meteo", 3600, times, allRows(HOURS),
+                NAMES, values, null);
+
+        long objectBytes = json.writeValueAsBytes(objects).length;
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        ColumnarBinaryConverter.write(columnar, new DataOutputStream(binary));
+
+        assertThat(objectBytes).isGreaterThan(json.writeValueAsBytes(columnar).length * 3L);
+        assertThat(objectBytes).isGreaterThan(binary.size() * 5L);
+    }
+
+    private static DataInputStream frame(ColumnarSeriesDto c) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarBinaryConverter.write(c, new DataOutputStream(out));
+        return new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static String name(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readUnsignedShort()), StandardCharsets.UTF_8);
+    }
+
+    private static long[] times(int n) {
+        long[] x = new long[n];
+        for (int i = 0; i < n; i++) x[i] = START + i * 3600L;
+        return x;
+    }
+
+    private static int[] allRows(int n) {
+        return IntStream.range(0, n).toArray();
+    }
+
+    /** A year of seeded weather-like values, one decimal, with a gap every 17 hours in {@code pm10}. */
+    private static double[][] year() {
+        Random rnd = new Random(7);
+        double[][] values = new double[NAMES.length][HOURS];
+        for (int i = 0; i < HOURS; i++) {
+            double season = Math.sin(2 * Math.PI * i / HOURS);
+            double day = Math.sin(2 * Math.PI * i / 24);
+            for (int v = 0; v < NAMES.length; v++) {
+                values[v][i] = Math.round((10 * v + 12 * season + 4 * day + rnd.nextGaussian()) * 10) / 10.0;
+            }
+            if (i % 17 == 0) values[7][i] = Double.NaN;
+        }
+        return values;
+    }
+
+    private static List<WeatherPointDto> points(long[] times, double[][] v) {
+        List<WeatherPointDto> out = new ArrayList<>(times.length);
+        for (int i = 0; i < times.length; i++) {
+            out.add(new WeatherPointDto(Instant.ofEpochSecond(times[i]), v[0][i], v[1][i], v[2][i], v[3][i],
+                    v[4][i], v[5][i], v[6][i], boxed(v[7][i]), v[8][i]));
+        }
+        return out;
+    }
+
+    private static Double boxed(double x) {
+        return Double.isNaN(x) ? null : x;
+    }
+}
@@ -0,0 +1,60 @@
+package com.milosz.podsiadly.backend.series;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+class BucketStatsTest {
+
+    private static final String[] VARS = { "temperature" };
+    private static final Interval DAY = Interval.parse("1d");
+
+    @Test
+    void mergeOfSplitSeriesEqualsWholeSeries() {
+        long h0 = HourlySeries.epochHour(Instant.parse("2024-03-01T00:00:00Z"));
+        HourlySeries whole = HourlySeries.span(h0, h0 + 71, VARS);
+        HourlySeries stored = HourlySeries.span(h0, h0 + 71, VARS);
+        HourlySeries fetched = HourlySeries.span(h0, h0 + 71, VARS);
+        for (int o = 0; o < 72; o++) {
+            double t = Math.sin(o / 5.0) * 10;
+            whole.set(0, whole.touch(h0 + o), t);
+            HourlySeries part = (o >= 20 && o < 50) ? fetched : stored;
+            part.set(0, part.touch(h0 + o), t);
+        }
+
+        BucketStats expected = BucketStats.of(whole, DAY);
+        BucketStats merged = copyOf(BucketStats.of(stored, DAY)).merge(BucketStats.of(fetched, DAY));
+
+        assertThat(merged.size()).isEqualTo(expected.size());
+        for (int b = 0; b < expected.size(); b++) {
+            assertThat(merged.startSecond(b)).isEqualTo(expected.startSecond(b));
+            assertThat(merged.count(0, b)).isEqualTo(expected.count(0, b));
+            for (Statistic s : Statistic.values()) {
+                assertThat(merged.value(0, b, s)).isCloseTo(expected.value(0, b, s), offset(1e-9));
+            }
+        }
+    }
+
+    @Test
+    void calendarBucketsUseMonthIndex() {
+        long march = Instant.parse("2024-03-17T05:00:00Z").getEpochSecond();
+        assertThat(Interval.monthStart(Interval.monthIndex(march)))
+                .isEqualTo(Instant.parse("2024-03-01T00:00:00Z").getEpochSecond());
+        assertThat(Interval.parse("3mo").bucketStart(march))
+                .isEqualTo(Instant.parse("2024-01-01T00:00:00Z").getEpochSecond());
+    }
+
+    /** Rebuilds {@code src} through the append/accumulate path the Mongo results use. */
+    private static BucketStats copyOf(BucketStats src) {
+        BucketStats out = BucketStats.empty(VARS, src.size());
+        for (int b = 0; b < src.size(); b++) {
+            int k = out.append(src.startSecond(b));
+            out.accumulate(0, k, src.count(0, b), src.value(0, b, Statistic.SUM),
+                    src.value(0, b, Statistic.MIN), src.value(0, b, Statistic.MAX));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,126 @@
+package com.milosz.podsiadly.backend.series;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.milosz.podsiadly.backend.dto.WeatherPointDto;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LttbTest {
+
+    private static final int HOURS = 8760;
+    private static final int MAX_POINTS = 500;
+    private static final long START = Instant.parse("2024-01-01T00:00:00Z").getEpochSecond();
+
+    @Test
+    void keepsEndpointsAndExtremesWithinTheLimit() {
+        double[][] ys = year(3);
+        ys[0][5000] = 60;
+
+        int[] rows = Lttb.select(times(HOURS), ys, HOURS, MAX_POINTS);
+
+        assertThat(rows.length).isLessThanOrEqualTo(MAX_POINTS);
+        assertThat(rows[0]).isZero();
+        assertThat(rows[rows.length - 1]).isEqualTo(HOURS - 1);
+        assertThat(rows).contains(5000);
+        assertThat(rows).isSorted();
+    }
+
+    @Test
+    void seriesWithinTheLimitAreReturnedWhole() {
+        double[][] ys = year(2);
+
+        assertThat(Lttb.select(times(HOURS), ys, 300, MAX_POINTS))
+                .containsExactly(IntStream.range(0, 300).toArray());
+        assertThat(Lttb.select(times(HOURS), ys, MAX_POINTS, MAX_POINTS)).hasSize(MAX_POINTS);
+        assertThat(Lttb.select(new long[0], new double[][] { {} }, 0, MAX_POINTS)).isEmpty();
+    }
+
+    @Test
+    void gapsAreSkippedAndEachVariableKeepsItsOwnEnds() {
+        double[][] ys = year(3);
+        Arrays.fill(ys[0], 0, 100, Double.NaN);
+        for (int i = 0; i < HOURS; i++) if (i < 2000 || i > 2100) ys[1][i] = Double.NaN;
+        Arrays.fill(ys[2], Double.NaN);
+
+        int[] rows = Lttb.select(times(HOURS), ys, HOURS, MAX_POINTS);
+
+        assertThat(rows.length).isLessThanOrEqualTo(MAX_POINTS);
+        assertThat(rows).isSorted().contains(100, 2000, 2100, HOURS - 1).doesNotContain(0);
+        assertThat(Arrays.stream(rows).filter(i -> i >= 2000 && i <= 2100)).hasSizeGreaterThan(2);
+    }
+
+    @Test
+    void allGapsStillKeepTheEndpoints() {
+        double[][] ys = { new double[HOURS] };
+        Arrays.fill(ys[0], Double.NaN);
+
+        assertThat(Lttb.select(times(HOURS), ys, HOURS, MAX_POINTS)).containsExactly(0, HOURS - 1);
+    }
+
+    @Test
+    void limitsBelowThreeThinToTheFirstAndLastRows() {
+        long[] x = times(HOURS);
+        double[][] ys = year(2);
+
+        assertThat(Lttb.select(x, ys, HOURS, 2)).containsExactly(0, HOURS - 1);
+        assertThat(Lttb.select(x, ys, HOURS, 1)).containsExactly(0);
+        assertThat(Lttb.select(x, ys, HOURS, 0)).hasSize(HOURS);
+    }
+
+    /** Payload comparison over a full year; run with {@code -Pbenchmarks}. */
+    @Test
+    @Tag("benchmark")
+    void downsampledYearSerializesToATenthOfTheBytes() throws Exception {
+        long[] x = times(HOURS);
+        double[][] ys = year(9);
+        ObjectMapper json = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        int[] rows = Lttb.select(x, ys, HOURS, MAX_POINTS);
+
+        long fullBytes = json.writeValueAsBytes(points(x, ys, IntStream.range(0, HOURS).toArray())).length;
+        long reducedBytes = json.writeValueAsBytes(points(x, ys, rows)).length;
+        assertThat(fullBytes).isGreaterThan(reducedBytes * 10);
+    }
+
+    private static long[] times(int n) {
+        long[] x = new long[n];
+        for (int i = 0; i < n; i++) x[i] = START + i * 3600L;
+        return x;
+    }
+
+    /** {@code variables} seeded series of a year: seasonal and daily cycles plus noise, one decimal. */
+    private static double[][] year(int variables) {
+        Random rnd = new Random(42);
+        double[][] ys = new double[variables][HOURS];
+        for (int i = 0; i < HOURS; i++) {
+            double season = Math.sin(2 * Math.PI * i / HOURS);
+            double day = Math.sin(2 * Math.PI * i / 24);
+            for (int v = 0; v < variables; v++) {
+                ys[v][i] = Math.round((10 * v + 12 * season + 4 * day + rnd.nextGaussian()) * 10) / 10.0;
+            }
+        }
+        return ys;
+    }
+
+    private static List<WeatherPointDto> points(long[] x, double[][] ys, int[] rows) {
+        List<WeatherPointDto> out = new ArrayList<>(rows.length);
+        for (int i : rows) {
+            out.add(new WeatherPointDto(Instant.ofEpochSecond(x[i]), ys[0][i], ys[1][i], ys[2][i], ys[3][i],
+                    ys[4][i], ys[5][i], ys[6][i], ys[7][i], ys[8][i]));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,71 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.config.MeasurementCollections;
+import com.milosz.podsiadly.backend.dto.AirQualityPointDto;
+import com.milosz.podsiadly.backend.series.BucketStats;
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import com.milosz.podsiadly.backend.series.Interval;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoClient;
+import com.milosz.podsiadly.backend.upstream.Revalidation;
+import com.milosz.podsiadly.backend.upstream.SingleFlight;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AirQualityServiceTest {
+
+    private static final Instant FROM = Instant.parse("2024-05-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-05-04T23:00:00Z");
+
+    @Test
+    void streamedHistoryMatchesTheBucketedResponse() throws IOException {
+        long first = FROM.getEpochSecond() / 3600, last = TO.getEpochSecond() / 3600;
+
+        // Missing hours, empty values and one duplicated hour, as a cursor over the stored rows returns them.
+        HourlySeries stored = HourlySeries.span(first, last, AirQualityService.VARIABLES);
+        List<Document> docs = new ArrayList<>();
+        for (long h = first; h <= last; h++) {
+            if (h % 4 == 0) continue;
+            double pm10 = 10 + (h % 13) * 1.5;
+            Double ozone = h % 5 == 0 ? null : 40.0 + h % 9;
+            int o = stored.touch(h);
+            stored.set(stored.variableIndex("pm10"), o, pm10);
+            stored.set(stored.variableIndex("o3"), o, ozone);
+            Document d = new Document("recordedAt", Date.from(HourlySeries.toInstant(h)))
+                    .append("pm10", pm10).append("o3", ozone);
+            docs.add(d);
+            if (h == first + 30) docs.add(new Document(d).append("pm10", 500.0));
+        }
+
+        MongoTemplate mongo = mock(MongoTemplate.class);
+        MeasurementRollups rollups = mock(MeasurementRollups.class);
+        when(rollups.aggregate(eq(MeasurementRollups.Family.AIR_QUALITY), eq("krk"), eq(FROM), eq(TO), any(), any()))
+                .thenAnswer(inv -> BucketStats.of(stored, inv.getArgument(4, Interval.class)));
+        when(mongo.stream(any(Query.class), eq(Document.class), eq("air_quality_measurement")))
+                .thenAnswer(inv -> docs.stream());
+        var service = new AirQualityService(mock(OpenMeteoClient.class), new SingleFlight(new SimpleMeterRegistry()),
+                mock(Revalidation.class), mongo, mock(LocationService.class), mock(MeasurementStore.class),
+                new MeasurementCollections("legacy"), rollups, mock(MeasurementVersions.class),
+                mock(HotLocations.class), mock(MeasurementWriteBehind.class));
+
+        for (String interval : List.of("1d", "6h", "1h")) {
+            List<AirQualityPointDto> streamed = new ArrayList<>();
+            service.streamHistory("krk", FROM, TO, interval, streamed::add);
+
+            assertThat(streamed).isNotEmpty().isEqualTo(service.history("krk", FROM, TO, interval));
+        }
+    }
+}
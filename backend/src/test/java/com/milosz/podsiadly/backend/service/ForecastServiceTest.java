@@ -0,0 +1,138 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.dto.CitySnapshotDto;
+import com.milosz.podsiadly.backend.dto.PlSnapshotResponseDto;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoClient;
+import com.milosz.podsiadly.backend.upstream.SingleFlight;
+import com.milosz.podsiadly.backend.upstream.UpstreamCache;
+import com.milosz.podsiadly.backend.upstream.UpstreamGateway;
+import com.milosz.podsiadly.backend.upstream.UpstreamScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RestClient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ForecastServiceTest {
+
+    private static final String DAILY_BODY = """
+            {"daily":{"time":["2025-01-01","2025-01-02","2025-01-03"],
+                      "temperature_2m_max":[1.5,2.5,3.5],
+                      "precipitation_probability_max":[10,20,30]}}
+            """;
+
+    private ForecastService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) service.shutdown();
+    }
+
+    @Test
+    void snapshotIsBuiltFromOneBatchRequestAndServedFromMemory() {
+        AtomicInteger calls = new AtomicInteger();
+        String batchBody = "[" + String.join(",", Collections.nCopies(16, DAILY_BODY)) + "]";
+        ClientHttpRequestFactory factory = (uri, method) -> {
+            calls.incrementAndGet();
+            return stubRequest(method, uri, batchBody, HttpStatus.OK);
+        };
+        service = new ForecastService(client(RestClient.builder().requestFactory(factory).build()), 4, Duration.ofSeconds(5));
+
+        PlSnapshotResponseDto today = service.polandSnapshot("today");
+        PlSnapshotResponseDto plus2 = service.polandSnapshot("+2");
+        PlSnapshotResponseDto week = service.polandSnapshot("week");
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(today.generatedAt()).isEqualTo(week.generatedAt());
+        assertThat(today.cities()).hasSize(16).allSatisfy(c -> assertThat(c.tMax()).isEqualTo(1.5));
+        assertThat(plus2.cities()).allSatisfy(c -> assertThat(c.pop()).isEqualTo(30));
+        assertThat(week.cities()).allSatisfy(c -> {
+            assertThat(c.tMax()).isEqualTo(2.5);
+            assertThat(c.pop()).isEqualTo(30);
+        });
+
+        service.refreshSnapshot();
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void fanOutLatencyTracksSlowestCallNotSum() {
+        long delayMs = 300;
+        AtomicInteger calls = new AtomicInteger();
+        service = new ForecastService(client(slowUpstream(delayMs, calls, null)), 16, Duration.ofSeconds(5));
+
+        long t0 = System.nanoTime();
+        PlSnapshotResponseDto res = service.polandSnapshot("tomorrow");
+        long tookMs = Duration.ofNanos(System.nanoTime() - t0).toMillis();
+
+        assertThat(calls.get()).isEqualTo(16);
+        assertThat(res.cities()).hasSize(16).allSatisfy(c -> {
+            assertThat(c.tMax()).isEqualTo(2.5);
+            assertThat(c.pop()).isEqualTo(20);
+        });
+        assertThat(tookMs).isLessThan(delayMs * 4);
+    }
+
+    @Test
+    void failedOrLateCitiesComeBackEmpty() {
+        AtomicInteger calls = new AtomicInteger();
+        service = new ForecastService(client(slowUpstream(50, calls, "latitude=52.2297")), 4, Duration.ofMillis(1500));
+
+        PlSnapshotResponseDto res = service.polandSnapshot("today");
+
+        assertThat(res.cities()).hasSize(16);
+        CitySnapshotDto warsaw = res.cities().stream().filter(c -> c.id().equals("waw")).findFirst().orElseThrow();
+        assertThat(warsaw.tMax()).isNull();
+        assertThat(warsaw.pop()).isNull();
+        assertThat(res.cities()).filteredOn(c -> !c.id().equals("waw"))
+                .allSatisfy(c -> assertThat(c.tMax()).isEqualTo(1.5));
+    }
+
+    private static OpenMeteoClient client(RestClient http) {
+        var meters = new SimpleMeterRegistry();
+        var cache = new UpstreamCache(meters, 100, 1_000_000,
+                Duration.ofHours(1), Duration.ofMinutes(15), Duration.ofMinutes(5), Duration.ofHours(1));
+        var quotas = new UpstreamScheduler(meters, 600, 600, 600, 600,
+                Duration.ofSeconds(2), Duration.ofSeconds(30), Duration.ofMinutes(2));
+        var gateway = new UpstreamGateway(http, quotas, meters, 16, 4, 8, 4, Duration.ofSeconds(2), 5, Duration.ofSeconds(30));
+        return new OpenMeteoClient(gateway, cache, new SingleFlight(meters));
+    }
+
+    private static RestClient slowUpstream(long delayMs, AtomicInteger calls, String failMarker) {
+        ClientHttpRequestFactory factory = (uri, method) -> {
+            if (uri.getQuery().matches(".*latitude=[^&]*,.*")) {
+                return stubRequest(method, uri, "{}", HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            calls.incrementAndGet();
+            boolean fail = failMarker != null && uri.toString().contains(failMarker);
+            try {
+                Thread.sleep(fail ? 10_000 : delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return stubRequest(method, uri, DAILY_BODY, HttpStatus.OK);
+        };
+        return RestClient.builder().requestFactory(factory).build();
+    }
+
+    private static MockClientHttpRequest stubRequest(HttpMethod method, URI uri, String body, HttpStatus status) {
+        var req = new MockClientHttpRequest(method, uri);
+        var resp = new MockClientHttpResponse(body.getBytes(StandardCharsets.UTF_8), status);
+        resp.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        req.setResponse(resp);
+        return req;
+    }
+}
@@ -0,0 +1,59 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.entity.Location;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocationCacheTest {
+
+    @Test
+    void keepsTheMostRecentlyUsedAndFollowsSavesAndDeletes() {
+        var meters = new SimpleMeterRegistry();
+        var cache = new LocationCache(meters, 2, Duration.ofMinutes(10));
+        cache.put(location("a", "Warszawa"));
+        cache.put(location("b", "Kraków"));
+        assertThat(cache.get("a").getName()).isEqualTo("Warszawa");
+        cache.put(location("c", "Gdańsk"));
+
+        assertThat(cache.get("b")).isNull();
+        assertThat(meters.get("locations.cache.hit.ratio").gauge().value()).isEqualTo(0.5);
+
+        cache.onAfterSave(new AfterSaveEvent<>(location("a", "Warsaw"), new Document(), "locations"));
+        cache.onAfterSave(new AfterSaveEvent<>(location("d", "Łódź"), new Document(), "locations"));
+        assertThat(cache.get("a").getName()).isEqualTo("Warsaw");
+        assertThat(cache.size()).isEqualTo(2);
+
+        cache.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "c"), Location.class, "locations"));
+        assertThat(cache.get("c")).isNull();
+    }
+
+    @Test
+    void deletesEvictWhatTheyRemovedEvenWhenTheIdIsNotKnown() {
+        var cache = new LocationCache(new SimpleMeterRegistry(), 10, Duration.ofMinutes(10));
+        cache.put(location("a", "Warszawa"));
+        cache.put(location("b", "Kraków"));
+        cache.put(location("c", "Gdańsk"));
+
+        cache.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "b"), Location.class, "locations"));
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.size()).isEqualTo(2);
+
+        cache.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", new Document("$in", List.of("a"))),
+                Location.class, "locations"));
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("c")).isNull();
+    }
+
+    private static Location location(String id, String name) {
+        return Location.builder().id(id).name(name).latitude(52.0).longitude(21.0).build();
+    }
+}
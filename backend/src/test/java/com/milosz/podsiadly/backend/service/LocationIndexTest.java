@@ -0,0 +1,46 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.entity.Location;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocationIndexTest {
+
+    @Test
+    void findsWordPrefixesFoldedSpellingsAndTyposRankedByPopularity() {
+        var meters = new SimpleMeterRegistry();
+        var hot = new HotLocations(meters, Duration.ofHours(6), Duration.ofMinutes(20));
+        var index = new LocationIndex(hot, meters);
+        index.load(List.of(
+                location("1", "Warszawa"),
+                location("2", "Warka"),
+                location("3", "Łódź"),
+                location("4", "Nowy Dwór Mazowiecki"),
+                location("5", "Kraków")));
+        hot.touch("2");
+
+        assertThat(ids(index.search("War", 5))).containsExactly("2", "1");
+        assertThat(ids(index.search("warszawa", 5))).containsExactly("1");
+        assertThat(ids(index.search("lodz", 5))).containsExactly("3");
+        assertThat(ids(index.search("mazo", 5))).containsExactly("4");
+        assertThat(ids(index.search("Warszwa", 5))).containsExactly("1");
+        assertThat(index.search("Krasnik", 5)).isEmpty();
+
+        index.remove("1");
+        index.put(location("6", "Warszawa"));
+        assertThat(ids(index.search("warsz", 5))).containsExactly("6");
+    }
+
+    private static Location location(String id, String name) {
+        return Location.builder().id(id).name(name).country("PL").latitude(52.0).longitude(21.0).build();
+    }
+
+    private static List<String> ids(List<Location> found) {
+        return found.stream().map(Location::getId).toList();
+    }
+}
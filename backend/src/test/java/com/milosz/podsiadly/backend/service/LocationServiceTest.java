@@ -0,0 +1,107 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.dto.LocationDto;
+import com.milosz.podsiadly.backend.entity.Location;
+import com.milosz.podsiadly.backend.mapper.LocationMapper;
+import com.milosz.podsiadly.backend.repository.LocationRepository;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+class LocationServiceTest {
+
+    private static final String KRAKOW = """
+            {"results": [{"name": "Kraków", "admin1": "Lesser Poland", "country_code": "PL",
+                          "latitude": 50.06, "longitude": 19.94}]}
+            """;
+
+    private OpenMeteoClient http;
+    private LocationRepository repo;
+    private LocationIndex index;
+    private LocationService service;
+
+    @BeforeEach
+    void setUp() {
+        var meters = new SimpleMeterRegistry();
+        http = mock(OpenMeteoClient.class);
+        repo = mock(LocationRepository.class);
+        when(repo.save(any())).thenAnswer(inv -> {
+            Location l = inv.getArgument(0);
+            l.setId("new-" + l.getName());
+            return l;
+        });
+        index = new LocationIndex(new HotLocations(meters, Duration.ofHours(6), Duration.ofMinutes(20)), meters);
+        service = new LocationService(http, repo, new LocationMapper(), index,
+                new LocationCache(meters, 10, Duration.ofMinutes(10)), mock(MongoTemplate.class), 1500, 0.02);
+    }
+
+    @Test
+    void nearMatchesDoNotHideThePlaceGeocodingFinds() {
+        index.load(List.of(location("kw", "Krakowiany", 52.1, 20.9)));
+        when(http.get(contains("geocoding-api."))).thenReturn(KRAKOW);
+
+        List<LocationDto> found = service.search("Kraków", 5);
+
+        assertThat(found).extracting(LocationDto::id).containsExactly("new-Kraków", "kw");
+        verify(repo).save(any());
+    }
+
+    @Test
+    void anExactStoredNameSkipsGeocoding() {
+        index.load(List.of(location("krk", "Kraków", 50.06, 19.94), location("kw", "Krakowiany", 52.1, 20.9)));
+
+        List<LocationDto> found = service.search("krakow", 5);
+
+        assertThat(found).extracting(LocationDto::id).containsExactly("krk", "kw");
+        verifyNoInteractions(http);
+    }
+
+    @Test
+    void nearMatchesAreStillListedWhenGeocodingFails() {
+        index.load(List.of(location("kw", "Krakowiany", 52.1, 20.9)));
+        when(http.get(contains("geocoding-api."))).thenThrow(new IllegalStateException("down"));
+
+        assertThat(service.search("Kraków", 5)).extracting(LocationDto::id).containsExactly("kw");
+    }
+
+    @Test
+    void placesInOneGridCellShareTheirDataKeyWhateverTheOrder() {
+        when(http.get(contains("geocoding-api."))).thenReturn("""
+                {"results": [
+                  {"name": "Kraków Stare Miasto", "country_code": "PL", "latitude": 50.061, "longitude": 19.937},
+                  {"name": "Kraków Kleparz", "country_code": "PL", "latitude": 50.069, "longitude": 19.931},
+                  {"name": "Nowa Huta", "country_code": "PL", "latitude": 50.071, "longitude": 20.038}]}
+                """);
+
+        service.search("Kraków", 5);
+
+        ArgumentCaptor<Location> saved = ArgumentCaptor.forClass(Location.class);
+        verify(repo, times(3)).save(saved.capture());
+        Location oldTown = saved.getAllValues().get(0);
+        Location kleparz = saved.getAllValues().get(1);
+        Location nowaHuta = saved.getAllValues().get(2);
+        assertThat(kleparz.dataKey()).isEqualTo(oldTown.dataKey()).isNotEqualTo(oldTown.getId());
+        assertThat(kleparz.dataLatitude()).isEqualTo(oldTown.dataLatitude()).isEqualTo(50.07);
+        assertThat(kleparz.dataLongitude()).isEqualTo(oldTown.dataLongitude()).isEqualTo(19.93);
+        assertThat(nowaHuta.dataKey()).isNotEqualTo(oldTown.dataKey());
+
+        Location again = location("other", "Kleparz", 50.069, 19.931);
+        again.snapToGrid(0.02);
+        assertThat(again.dataKey()).isEqualTo(oldTown.dataKey());
+    }
+
+    private static Location location(String id, String name, double lat, double lon) {
+        return Location.builder().id(id).name(name).country("PL").latitude(lat).longitude(lon).build();
+    }
+}
@@ -0,0 +1,58 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.config.MeasurementCollections;
+import com.milosz.podsiadly.backend.entity.WeatherMeasurement;
+import com.milosz.podsiadly.backend.series.Interval;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MeasurementAggregationTest {
+
+    private static final String[] VARS = {"temperature", "humidity"};
+    private static final Instant FROM = Instant.parse("2024-03-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-03-02T23:00:00Z");
+
+    @Test
+    void timeSeriesReadsKeepOneRowPerHourBeforeBucketing() {
+        List<Document> stages = pipeline("time-series");
+
+        assertThat(stages).extracting(d -> d.keySet().iterator().next())
+                .containsExactly("$match", "$group", "$set", "$group", "$sort");
+        Document distinct = stages.get(1).get("$group", Document.class);
+        assertThat(distinct.get("_id")).isEqualTo(new Document("l", "$locationId").append("t", "$recordedAt"));
+        assertThat(distinct.get("temperature")).isEqualTo(new Document("$first", "$temperature"));
+        assertThat(distinct.get("humidity")).isEqualTo(new Document("$first", "$humidity"));
+    }
+
+    @Test
+    void regularReadsRelyOnTheUniqueIndex() {
+        assertThat(pipeline("dual")).extracting(d -> d.keySet().iterator().next())
+                .containsExactly("$match", "$group", "$sort");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Document> pipeline(String mode) {
+        MongoTemplate mongo = mock(MongoTemplate.class);
+        when(mongo.aggregate(any(Aggregation.class), eq(WeatherMeasurement.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(), new Document()));
+        var aggregation = new MeasurementAggregation(mongo, new MeasurementCollections(mode));
+
+        aggregation.aggregate(WeatherMeasurement.class, VARS, "waw", FROM, TO, Interval.parse("1d"), null);
+
+        ArgumentCaptor<Aggregation> agg = ArgumentCaptor.forClass(Aggregation.class);
+        verify(mongo).aggregate(agg.capture(), eq(WeatherMeasurement.class), eq(Document.class));
+        return agg.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+    }
+}
@@ -0,0 +1,108 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MeasurementWriteBehindTest {
+
+    private static final MeasurementWriteBehind.Target WEATHER = new MeasurementWriteBehind.Target(
+            MeasurementRollups.Family.WEATHER, List.of("weather_measurements"), Map.of());
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void mergesPendingRowsPerHourAndWritesThemInOneBulk() {
+        MeasurementStore store = mock(MeasurementStore.class);
+        when(store.writeAll(anyList(), anyMap(), anyMap())).thenThrow(new IllegalStateException("down")).thenReturn(4);
+        var writes = new MeasurementWriteBehind(store, mock(MeasurementRollups.class), mock(MeasurementVersions.class),
+                new SimpleMeterRegistry(), true, Duration.ofHours(1), 1000, 10_000);
+        var stored = new AtomicInteger();
+
+        writes.submit(WEATHER, "waw", series(100, 102, 1.0), stored::incrementAndGet);
+        writes.submit(WEATHER, "waw", series(102, 103, 2.0), null);
+        assertThat(writes.pendingRows()).isEqualTo(4);
+
+        writes.flush();
+        assertThat(stored.get()).isZero();
+        assertThat(writes.pendingRows()).isEqualTo(4);
+
+        writes.flush();
+        ArgumentCaptor<Map<String, HourlySeries>> rows = ArgumentCaptor.forClass(Map.class);
+        verify(store, times(2)).writeAll(any(), rows.capture(), any());
+        HourlySeries waw = rows.getValue().get("waw");
+        assertThat(waw.startHour()).isEqualTo(100);
+        assertThat(waw.presentCount()).isEqualTo(4);
+        assertThat(waw.at(0, 1)).isEqualTo(1.0);
+        assertThat(waw.at(0, 2)).isEqualTo(2.0);
+        assertThat(stored.get()).isEqualTo(1);
+        assertThat(writes.pendingRows()).isZero();
+    }
+
+    @Test
+    void dropsFailedRowsThatNoLongerFitWhileTheStoreStaysDown() {
+        MeasurementStore store = mock(MeasurementStore.class);
+        when(store.writeAll(anyList(), anyMap(), anyMap())).thenThrow(new IllegalStateException("down"));
+        var meters = new SimpleMeterRegistry();
+        var writes = new MeasurementWriteBehind(store, mock(MeasurementRollups.class), mock(MeasurementVersions.class),
+                meters, true, Duration.ofHours(1), 8, 8);
+        var stored = new AtomicInteger();
+
+        for (int i = 0; i < 10; i++) {
+            writes.submit(WEATHER, "loc" + i, series(100, 103, i), stored::incrementAndGet);
+            assertThat(writes.pendingRows()).isLessThanOrEqualTo(8);
+        }
+        assertThat(meters.get("measurements.writebehind.dropped").counter().count()).isEqualTo(32);
+
+        doReturn(8).when(store).writeAll(anyList(), anyMap(), anyMap());
+        writes.flush();
+        assertThat(stored.get()).isEqualTo(2);
+        assertThat(writes.pendingRows()).isZero();
+    }
+
+    @Test
+    void afterFlushStepsWaitUntilTheRowsAreStored() {
+        MeasurementStore store = mock(MeasurementStore.class);
+        when(store.writeAll(anyList(), anyMap(), anyMap()))
+                .thenThrow(new IllegalStateException("down"))
+                .thenThrow(new IllegalStateException("still down"))
+                .thenReturn(4);
+        MeasurementRollups rollups = mock(MeasurementRollups.class);
+        MeasurementVersions versions = mock(MeasurementVersions.class);
+        WeatherCoverageService coverage = mock(WeatherCoverageService.class);
+        var writes = new MeasurementWriteBehind(store, rollups, versions,
+                new SimpleMeterRegistry(), true, Duration.ofHours(1), 1000, 10_000);
+
+        writes.submit(WEATHER, "waw", series(100, 103, 1.0), () -> coverage.markCovered("waw", 100, 103));
+        writes.flush();
+        writes.flush();
+        verifyNoInteractions(coverage, rollups, versions);
+
+        writes.flush();
+        writes.flush();
+        var inOrder = inOrder(store, rollups, versions, coverage);
+        inOrder.verify(store, times(3)).writeAll(anyList(), anyMap(), anyMap());
+        inOrder.verify(rollups).refresh(eq(MeasurementRollups.Family.WEATHER), eq("waw"), any());
+        inOrder.verify(versions).bump(MeasurementRollups.Family.WEATHER, "waw");
+        inOrder.verify(coverage).markCovered("waw", 100, 103);
+        verifyNoMoreInteractions(coverage);
+    }
+
+    private static HourlySeries series(long from, long to, double value) {
+        HourlySeries s = HourlySeries.span(from, to, "temperature");
+        for (long h = from; h <= to; h++) s.set(0, s.touch(h), value);
+        return s;
+    }
+}
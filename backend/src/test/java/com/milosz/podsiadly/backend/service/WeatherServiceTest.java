@@ -0,0 +1,201 @@
+package com.milosz.podsiadly.backend.service;
+
+import com.milosz.podsiadly.backend.config.MeasurementCollections;
+import com.milosz.podsiadly.backend.dto.WeatherPointDto;
+import com.milosz.podsiadly.backend.entity.Location;
+import com.milosz.podsiadly.backend.mapper.LocationMapper;
+import com.milosz.podsiadly.backend.series.BucketStats;
+import com.milosz.podsiadly.backend.series.HourlySeries;
+import com.milosz.podsiadly.backend.series.Interval;
+import com.milosz.podsiadly.backend.upstream.FetchPool;
+import com.milosz.podsiadly.backend.upstream.OpenMeteoClient;
+import com.milosz.podsiadly.backend.upstream.Revalidation;
+import com.milosz.podsiadly.backend.upstream.SingleFlight;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.StringJoiner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WeatherServiceTest {
+
+    private static final Instant FROM = Instant.parse("2020-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2020-01-01T05:00:00Z");
+    private static final long FIRST_HOUR = FROM.getEpochSecond() / 3600;
+    private static final long LAST_HOUR = TO.getEpochSecond() / 3600;
+
+    private final Location loc = Location.builder().id("waw").name("Warszawa").latitude(52.2).longitude(21.0).build();
+
+    private OpenMeteoClient http;
+    private MongoTemplate mongo;
+    private Revalidation revalidation;
+    private MeasurementRollups rollups;
+    private MeasurementWriteBehind writeBehind;
+    private WeatherCoverageService coverage;
+    private HotLocations hot;
+    private WeatherService service;
+
+    @BeforeEach
+    void setUp() {
+        http = mock(OpenMeteoClient.class);
+        mongo = mock(MongoTemplate.class);
+        revalidation = mock(Revalidation.class);
+        rollups = mock(MeasurementRollups.class);
+        writeBehind = mock(MeasurementWriteBehind.class);
+        coverage = mock(WeatherCoverageService.class);
+        hot = mock(HotLocations.class);
+        when(coverage.missing("waw", FIRST_HOUR, LAST_HOUR))
+                .thenReturn(List.of(new WeatherCoverageService.HourRange(FIRST_HOUR, LAST_HOUR)));
+        when(rollups.aggregate(any(), any(), any(), any(), any(), any()))
+                .thenReturn(BucketStats.empty(WeatherService.VARIABLES, 0));
+        service = service(writeBehind);
+    }
+
+    @Test
+    void rangesOlderThanTheAirQualityHistoryAreCoveredWithoutPm() {
+        answer(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+
+        var history = service.history(loc, FROM, TO, "1h", null, null);
+
+        assertThat(history.stale()).isFalse();
+        assertThat(history.points()).hasSize(6)
+                .allSatisfy(p -> {
+                    assertThat(p.temperature()).isNotNull();
+                    assertThat(p.pm10()).isNull();
+                });
+        afterFlush().run();
+        verify(coverage).markCovered("waw", FIRST_HOUR, LAST_HOUR);
+        verifyNoInteractions(revalidation);
+    }
+
+    @Test
+    void transientAirQualityFailuresLeaveTheRangeUncovered() {
+        answer(new ResourceAccessException("timeout"));
+
+        var history = service.history(loc, FROM, TO, "1h", null, null);
+
+        assertThat(history.stale()).isTrue();
+        afterFlush().run();
+        verify(coverage, never()).markCovered(any(), anyLong(), anyLong());
+        verify(revalidation).submit(startsWith("weather.history:waw:"), any());
+    }
+
+    @Test
+    void rangesStayUncoveredWhileTheirRowsFailToStore() {
+        answer(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+        MeasurementStore store = mock(MeasurementStore.class);
+        when(store.writeAll(anyList(), anyMap(), anyMap())).thenThrow(new IllegalStateException("down")).thenReturn(6);
+        var buffered = new MeasurementWriteBehind(store, rollups, mock(MeasurementVersions.class),
+                new SimpleMeterRegistry(), true, Duration.ofHours(1), 1000, 10_000);
+
+        assertThat(service(buffered).history(loc, FROM, TO, "1h", null, null).stale()).isFalse();
+        buffered.flush();
+        verify(coverage, never()).markCovered(any(), anyLong(), anyLong());
+
+        buffered.flush();
+        verify(coverage).markCovered("waw", FIRST_HOUR, LAST_HOUR);
+        verify(store, times(2)).writeAll(anyList(), anyMap(), anyMap());
+    }
+
+    @Test
+    void currentNeverServesAStoredForecastHour() {
+        when(hot.isFresh("waw")).thenReturn(true);
+        Instant hour = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        when(mongo.findOne(any(Query.class), eq(Document.class), eq("weather_measurements")))
+                .thenReturn(new Document("recordedAt", Date.from(hour)).append("temperature", 3.5));
+
+        assertThat(service.current(loc).data().temperature()).isEqualTo(3.5);
+
+        ArgumentCaptor<Query> q = ArgumentCaptor.forClass(Query.class);
+        verify(mongo).findOne(q.capture(), eq(Document.class), eq("weather_measurements"));
+        Instant bound = q.getValue().getQueryObject().get("recordedAt", Document.class).get("$lte", Instant.class);
+        assertThat(bound).isBetween(hour, Instant.now());
+    }
+
+    @Test
+    void streamedHistoryMatchesTheBucketedResponse() throws IOException {
+        Instant to = Instant.parse("2020-01-03T23:00:00Z");
+        long lastHour = to.getEpochSecond() / 3600;
+        when(coverage.missing("waw", FIRST_HOUR, lastHour))
+                .thenReturn(List.of(new WeatherCoverageService.HourRange(FIRST_HOUR, LAST_HOUR)));
+        answer(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+
+        // Stored rows after the fetched hours, with missing hours, empty values and one duplicated hour.
+        HourlySeries stored = HourlySeries.span(LAST_HOUR + 1, lastHour, WeatherService.VARIABLES);
+        List<Document> docs = new ArrayList<>();
+        for (long h = LAST_HOUR + 1; h <= lastHour; h++) {
+            if (h % 5 == 0) continue;
+            double temperature = (h % 11) * 0.5;
+            Double humidity = h % 3 == 0 ? null : 60.0 + h % 7;
+            int o = stored.touch(h);
+            stored.set(stored.variableIndex("temperature"), o, temperature);
+            stored.set(stored.variableIndex("humidity"), o, humidity);
+            Document d = new Document("recordedAt", Date.from(HourlySeries.toInstant(h)))
+                    .append("temperature", temperature).append("humidity", humidity);
+            docs.add(d);
+            if (h == LAST_HOUR + 30) docs.add(new Document(d).append("temperature", 99.0));
+        }
+        when(rollups.aggregate(any(), eq("waw"), eq(FROM), eq(to), any(), any()))
+                .thenAnswer(inv -> BucketStats.of(stored, inv.getArgument(4, Interval.class)));
+        when(mongo.stream(any(Query.class), eq(Document.class), eq("weather_measurements")))
+                .thenAnswer(inv -> docs.stream());
+
+        for (String interval : List.of("1d", "6h")) {
+            List<WeatherPointDto> streamed = new ArrayList<>();
+            service.streamHistory(loc, FROM, to, interval, "temperature:max", streamed::add);
+
+            assertThat(streamed)
+                    .isNotEmpty()
+                    .isEqualTo(service.history(loc, FROM, to, interval, "temperature:max", null).points());
+        }
+    }
+
+    private WeatherService service(MeasurementWriteBehind writeBehind) {
+        var meters = new SimpleMeterRegistry();
+        return new WeatherService(http, new SingleFlight(meters), new FetchPool(meters, 2, 2), revalidation, mongo,
+                mock(MeasurementStore.class), new MeasurementCollections("legacy"), rollups,
+                mock(MeasurementVersions.class), hot, writeBehind, mock(LocationMapper.class),
+                coverage);
+    }
+
+    /** Archive answers six hours of temperatures; the air-quality API throws {@code airQuality}. */
+    private void answer(RuntimeException airQuality) {
+        StringJoiner times = new StringJoiner(",");
+        StringJoiner temps = new StringJoiner(",");
+        for (long h = FIRST_HOUR; h <= LAST_HOUR; h++) {
+            times.add("\"" + Instant.ofEpochSecond(h * 3600).toString().substring(0, 16) + "\"");
+            temps.add(String.valueOf(h - FIRST_HOUR));
+        }
+        String archive = "{\"hourly\":{\"time\":[" + times + "],\"temperature_2m\":[" + temps + "]}}";
+        when(http.get(anyString())).thenAnswer(inv -> {
+            String url = inv.getArgument(0);
+            if (url.contains("air-quality-api.")) throw airQuality;
+            assertThat(url).contains("archive-api.");
+            return archive;
+        });
+    }
+
+    private Runnable afterFlush() {
+        ArgumentCaptor<Runnable> after = ArgumentCaptor.forClass(Runnable.class);
+        verify(writeBehind).submit(any(), eq("waw"), any(), after.capture());
+        return after.getValue();
+    }
+}
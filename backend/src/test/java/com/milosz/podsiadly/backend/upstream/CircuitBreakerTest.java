@@ -0,0 +1,34 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensAfterThresholdAndClosesAfterOneSuccessfulProbe() throws Exception {
+        var cb = new CircuitBreaker(3, TimeUnit.MILLISECONDS.toNanos(50));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(cb.tryAcquire()).isTrue();
+            cb.onFailure();
+        }
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(cb.tryAcquire()).isFalse();
+
+        Thread.sleep(60);
+        assertThat(cb.tryAcquire()).isTrue();
+        assertThat(cb.tryAcquire()).as("only one probe while half-open").isFalse();
+        cb.onFailure();
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        Thread.sleep(60);
+        assertThat(cb.tryAcquire()).isTrue();
+        cb.onSuccess();
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(cb.tryAcquire()).isTrue();
+    }
+}
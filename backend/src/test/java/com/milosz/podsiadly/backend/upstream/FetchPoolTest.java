@@ -0,0 +1,50 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FetchPoolTest {
+
+    @Test
+    void runsChunksSideBySideWithinThePerRequestLimitAndMergesEveryResult() {
+        var pool = new FetchPool(new SimpleMeterRegistry(), 8, 3);
+        var running = new AtomicInteger();
+        var peak = new AtomicInteger();
+        try {
+            List<Supplier<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                int n = i;
+                tasks.add(() -> UpstreamPriority.current() == UpstreamPriority.PREFETCH ? slow(n, running, peak) : -1);
+            }
+            tasks.add(() -> { throw new IllegalStateException("chunk failed"); });
+
+            List<Integer> merged = new ArrayList<>();
+            boolean ok = UpstreamPriority.PREFETCH.call(() -> pool.forEachCompleted(tasks, merged::add));
+
+            assertThat(ok).isFalse();
+            assertThat(merged).containsExactlyInAnyOrder(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+            assertThat(peak.get()).isBetween(2, 3);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int slow(int n, AtomicInteger running, AtomicInteger peak) {
+        peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+        }
+        return n;
+    }
+}
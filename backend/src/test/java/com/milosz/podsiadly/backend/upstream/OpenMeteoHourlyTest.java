@@ -0,0 +1,89 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenMeteoHourlyTest {
+
+    private static final long H0 = Instant.parse("2024-03-01T00:00:00Z").getEpochSecond();
+
+    @Test
+    void readsRequestedColumnsInAnyOrderWithNullsAsNaN() {
+        String body = """
+                {"hourly": {"pm2_5": [3.5, null, 4],
+                            "carbon_monoxide": [100, 101, 102],
+                            "time": ["2024-03-01T00:00", "2024-03-01T01:00", "2024-03-01T02:00"],
+                            "pm10": [null, 7.25, 8]},
+                 "latitude": 52.2, "hourly_units": {"pm10": "μg/m³"}}
+                """;
+
+        OpenMeteoHourly h = OpenMeteoHourly.parse(body, "pm10", "pm2_5");
+
+        assertThat(h.size()).isEqualTo(3);
+        assertThat(h.epochSecond(0)).isEqualTo(H0);
+        assertThat(h.time(2)).isEqualTo(Instant.parse("2024-03-01T02:00:00Z"));
+        assertThat(h.column("pm10")).containsExactly(Double.NaN, 7.25, 8.0);
+        assertThat(h.column("pm2_5")).containsExactly(3.5, Double.NaN, 4.0);
+        assertThat(h.value("carbon_monoxide", 0)).isNaN();
+        assertThat(h.indexOf(H0 + 7200)).isEqualTo(2);
+        assertThat(h.indexOf(H0 + 1800)).isEqualTo(-1);
+    }
+
+    @Test
+    void missingOrShortColumnsReadAsMissingHours() {
+        String body = """
+                {"hourly": {"time": ["2024-03-01T00:00", "2024-03-01T01:00"], "temperature_2m": [1.5]}}
+                """;
+
+        OpenMeteoHourly h = OpenMeteoHourly.parse(body, "temperature_2m", "relative_humidity_2m");
+
+        assertThat(h.column("temperature_2m")).containsExactly(1.5, Double.NaN);
+        assertThat(h.column("relative_humidity_2m")).containsExactly(Double.NaN, Double.NaN);
+        assertThat(h.value("relative_humidity_2m", 1)).isNaN();
+        assertThat(h.value("temperature_2m", 5)).isNaN();
+    }
+
+    @Test
+    void bodiesWithoutAnHourlyBlockAreEmpty() {
+        assertThat(OpenMeteoHourly.parse(null, "pm10").size()).isZero();
+        assertThat(OpenMeteoHourly.parse("", "pm10").size()).isZero();
+        assertThat(OpenMeteoHourly.parse("{\"error\": true, \"reason\": \"x\"}", "pm10").size()).isZero();
+        assertThat(OpenMeteoHourly.parse("[]", "pm10").size()).isZero();
+        assertThat(OpenMeteoHourly.parseAll("\"nope\"", "pm10")).isEmpty();
+    }
+
+    @Test
+    void parseAllKeepsOneBlockPerLocationInOrder() {
+        String body = """
+                [{"latitude": 52.2, "hourly": {"time": ["2024-03-01T00:00"], "pm10": [1]}},
+                 {"latitude": 50.1, "hourly": {"pm10": [2, 3], "time": ["2024-03-01T00:00", "2024-03-01T01:00"]}},
+                 {"latitude": 54.4}]
+                """;
+
+        var all = OpenMeteoHourly.parseAll(body, "pm10");
+
+        assertThat(all).hasSize(3);
+        assertThat(all.get(0).column("pm10")).containsExactly(1.0);
+        assertThat(all.get(1).column("pm10")).containsExactly(2.0, 3.0);
+        assertThat(all.get(1).epochSecond(1)).isEqualTo(H0 + 3600);
+        assertThat(all.get(2).size()).isZero();
+
+        var single = OpenMeteoHourly.parseAll("{\"hourly\": {\"time\": [\"2024-03-01T00:00\"], \"pm10\": [4]}}", "pm10");
+        assertThat(single).hasSize(1);
+        assertThat(single.get(0).column("pm10")).containsExactly(4.0);
+    }
+
+    @Test
+    void timesWithAndWithoutOffsetsAreInstants() {
+        assertThat(OpenMeteoHourly.parseTime("2024-03-01T00:00")).isEqualTo(H0);
+        assertThat(OpenMeteoHourly.parseTime("2024-03-01T00:00:00")).isEqualTo(H0);
+        assertThat(OpenMeteoHourly.parseTime("2024-03-01T01:00+01:00")).isEqualTo(H0);
+        assertThat(OpenMeteoHourly.parseTime("2024-02-29T23:00Z")).isEqualTo(H0 - 3600);
+
+        String unix = "{\"hourly\": {\"time\": [" + H0 + ", " + (H0 + 3600) + "], \"pm10\": [1, 2]}}";
+        assertThat(OpenMeteoHourly.parse(unix, "pm10").epochSecond(1)).isEqualTo(H0 + 3600);
+    }
+}
@@ -0,0 +1,49 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    private static final String URL = "https://api.open-meteo.com/v1/forecast?longitude=21.0122&latitude=52.2297&current=temperature_2m";
+    private static final String SAME = "https://api.open-meteo.com/v1/forecast?latitude=52.22970&longitude=21.01220&current=temperature_2m";
+
+    @Test
+    void concurrentCallersShareOneRunOnlyWhileItIsInFlight() throws Exception {
+        var meters = new SimpleMeterRegistry();
+        var flights = new SingleFlight(meters);
+        var runs = new AtomicInteger();
+        var release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String url = i % 2 == 0 ? URL : SAME;
+                results.add(pool.submit(() -> flights.run("test", "waw", url, () -> {
+                    int n = runs.incrementAndGet();
+                    try { release.await(); } catch (InterruptedException e) { throw new IllegalStateException(e); }
+                    return n;
+                })));
+            }
+            while (meters.counter("upstream.coalesced", "call", "test").count() < 7) Thread.sleep(5);
+            release.countDown();
+            for (Future<Integer> f : results) assertThat(f.get()).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(flights.run("test", "waw", URL, runs::incrementAndGet)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,45 @@
+package com.milosz.podsiadly.backend.upstream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UpstreamSchedulerTest {
+
+    @Test
+    void lowerPrioritiesLeaveTheirReserveAndFailFastPastTheDeadline() {
+        var meters = new SimpleMeterRegistry();
+        var scheduler = new UpstreamScheduler(meters, 4, 4, 4, 4,
+                Duration.ofMillis(100), Duration.ofMillis(100), Duration.ofMillis(100));
+
+        UpstreamPriority.BACKFILL.run(() -> scheduler.acquire("forecast", 1));
+        UpstreamPriority.BACKFILL.run(() -> scheduler.acquire("forecast", 1));
+        assertThatThrownBy(() -> UpstreamPriority.BACKFILL.run(() -> scheduler.acquire("forecast", 1)))
+                .isInstanceOf(UpstreamBusyException.class);
+
+        UpstreamPriority.PREFETCH.run(() -> scheduler.acquire("forecast", 1));
+        assertThatThrownBy(() -> UpstreamPriority.PREFETCH.run(() -> scheduler.acquire("forecast", 1)))
+                .isInstanceOf(UpstreamBusyException.class);
+
+        scheduler.acquire("forecast", 1);
+        assertThat(UpstreamPriority.current()).isEqualTo(UpstreamPriority.INTERACTIVE);
+        assertThat(meters.counter("upstream.quota.rejected", "family", "forecast", "priority", "backfill").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void releasedTokensCanBeTakenAgain() {
+        var scheduler = new UpstreamScheduler(new SimpleMeterRegistry(), 4, 4, 4, 4,
+                Duration.ofMillis(100), Duration.ofMillis(100), Duration.ofMillis(100));
+
+        scheduler.acquire("archive", 4);
+        assertThatThrownBy(() -> scheduler.acquire("archive", 1)).isInstanceOf(UpstreamBusyException.class);
+
+        scheduler.release("archive", 4);
+        scheduler.acquire("archive", 4);
+    }
+}
@@ -25,6 +25,7 @@ export interface WeatherCurrentDto {
   location: LocationDto;
   data: WeatherPointDto;
   source: string;
+  stale?: boolean;
 }
 
 export interface WeatherHistoryResponseDto {
@@ -32,6 +33,7 @@ export interface WeatherHistoryResponseDto {
   interval: string;
   points: WeatherPointDto[];
   source: string;
+  stale?: boolean;
 }
 export interface AirQualityPointDto {
   time: string;
@@ -57,4 +59,5 @@ export interface AirQualityAveragesDto {
 export interface AirQualitySeriesDto {
   averages: AirQualityAveragesDto;
   points: AirQualityPointDto[];
+  stale?: boolean;
 }